@@ -21,9 +21,10 @@ import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.analysis.tokenattributes.KeywordAttribute;
 import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
+import org.apache.lucene.util.ArrayUtil;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Objects;
 
 /**
  * Implements the Lovins stemming algorithm. A collection of implementations of the Lovins stemmer is described in
@@ -32,6 +33,9 @@ import java.util.HashMap;
  * <p>
  * Code adapted from:
  * <a href="http://www.cs.waikato.ac.nz/~eibe/stemmers/" target="_blank">http://www.cs.waikato.ac.nz/~eibe/stemmers/</a>
+ * <p>
+ * The word is stemmed in a buffer reused across the tokens, and the endings are looked up in a trie of the reversed
+ * endings, walked from the last character of the word; thus no object is allocated per token.
  *
  * @author Nicola Ferro
  * @version 1.00
@@ -44,340 +48,350 @@ public class LovinsStemFilter extends TokenFilter {
      * inconsistent with the algorithm as described in Lovins's paper)
      */
     private static final boolean m_CompMode = false;
+
+    /**
+     * The length of the longest ending.
+     */
+    private static final int MAX_ENDING = 11;
+
     /**
-     * The hash tables containing the list of endings.
+     * The trie of the reversed endings: the character, the first child and the next sibling of every node, and the
+     * condition code of the ending ending at the node, 0 if none. Node 0 is the root.
      */
-    private static final HashMap<String, String> m_l11;
-    private static final HashMap<String, String> m_l10;
-    private static final HashMap<String, String> m_l9;
-    private static final HashMap<String, String> m_l8;
-    private static final HashMap<String, String> m_l7;
-    private static final HashMap<String, String> m_l6;
-    private static final HashMap<String, String> m_l5;
-    private static final HashMap<String, String> m_l4;
-    private static final HashMap<String, String> m_l3;
-    private static final HashMap<String, String> m_l2;
-    private static final HashMap<String, String> m_l1;
+    private static char[] label = new char[64];
+    private static int[] firstChild = new int[64];
+    private static int[] nextSibling = new int[64];
+    private static char[] condition = new char[64];
+    private static int nodes = 1;
 
     static {
 
-        m_l11 = new HashMap<>();
-        m_l11.put("alistically", "B");
-        m_l11.put("arizability", "A");
-        m_l11.put("izationally", "B");
-        m_l10 = new HashMap<>();
-        m_l10.put("antialness", "A");
-        m_l10.put("arisations", "A");
-        m_l10.put("arizations", "A");
-        m_l10.put("entialness", "A");
-        m_l9 = new HashMap<>();
-        m_l9.put("allically", "C");
-        m_l9.put("antaneous", "A");
-        m_l9.put("antiality", "A");
-        m_l9.put("arisation", "A");
-        m_l9.put("arization", "A");
-        m_l9.put("ationally", "B");
-        m_l9.put("ativeness", "A");
-        m_l9.put("eableness", "E");
-        m_l9.put("entations", "A");
-        m_l9.put("entiality", "A");
-        m_l9.put("entialize", "A");
-        m_l9.put("entiation", "A");
-        m_l9.put("ionalness", "A");
-        m_l9.put("istically", "A");
-        m_l9.put("itousness", "A");
-        m_l9.put("izability", "A");
-        m_l9.put("izational", "A");
-        m_l8 = new HashMap<>();
-        m_l8.put("ableness", "A");
-        m_l8.put("arizable", "A");
-        m_l8.put("entation", "A");
-        m_l8.put("entially", "A");
-        m_l8.put("eousness", "A");
-        m_l8.put("ibleness", "A");
-        m_l8.put("icalness", "A");
-        m_l8.put("ionalism", "A");
-        m_l8.put("ionality", "A");
-        m_l8.put("ionalize", "A");
-        m_l8.put("iousness", "A");
-        m_l8.put("izations", "A");
-        m_l8.put("lessness", "A");
-        m_l7 = new HashMap<>();
-        m_l7.put("ability", "A");
-        m_l7.put("aically", "A");
-        m_l7.put("alistic", "B");
-        m_l7.put("alities", "A");
-        m_l7.put("ariness", "E");
-        m_l7.put("aristic", "A");
-        m_l7.put("arizing", "A");
-        m_l7.put("ateness", "A");
-        m_l7.put("atingly", "A");
-        m_l7.put("ational", "B");
-        m_l7.put("atively", "A");
-        m_l7.put("ativism", "A");
-        m_l7.put("elihood", "E");
-        m_l7.put("encible", "A");
-        m_l7.put("entally", "A");
-        m_l7.put("entials", "A");
-        m_l7.put("entiate", "A");
-        m_l7.put("entness", "A");
-        m_l7.put("fulness", "A");
-        m_l7.put("ibility", "A");
-        m_l7.put("icalism", "A");
-        m_l7.put("icalist", "A");
-        m_l7.put("icality", "A");
-        m_l7.put("icalize", "A");
-        m_l7.put("ication", "G");
-        m_l7.put("icianry", "A");
-        m_l7.put("ination", "A");
-        m_l7.put("ingness", "A");
-        m_l7.put("ionally", "A");
-        m_l7.put("isation", "A");
-        m_l7.put("ishness", "A");
-        m_l7.put("istical", "A");
-        m_l7.put("iteness", "A");
-        m_l7.put("iveness", "A");
-        m_l7.put("ivistic", "A");
-        m_l7.put("ivities", "A");
-        m_l7.put("ization", "F");
-        m_l7.put("izement", "A");
-        m_l7.put("oidally", "A");
-        m_l7.put("ousness", "A");
-        m_l6 = new HashMap<>();
-        m_l6.put("aceous", "A");
-        m_l6.put("acious", "B");
-        m_l6.put("action", "G");
-        m_l6.put("alness", "A");
-        m_l6.put("ancial", "A");
-        m_l6.put("ancies", "A");
-        m_l6.put("ancing", "B");
-        m_l6.put("ariser", "A");
-        m_l6.put("arized", "A");
-        m_l6.put("arizer", "A");
-        m_l6.put("atable", "A");
-        m_l6.put("ations", "B");
-        m_l6.put("atives", "A");
-        m_l6.put("eature", "Z");
-        m_l6.put("efully", "A");
-        m_l6.put("encies", "A");
-        m_l6.put("encing", "A");
-        m_l6.put("ential", "A");
-        m_l6.put("enting", "C");
-        m_l6.put("entist", "A");
-        m_l6.put("eously", "A");
-        m_l6.put("ialist", "A");
-        m_l6.put("iality", "A");
-        m_l6.put("ialize", "A");
-        m_l6.put("ically", "A");
-        m_l6.put("icance", "A");
-        m_l6.put("icians", "A");
-        m_l6.put("icists", "A");
-        m_l6.put("ifully", "A");
-        m_l6.put("ionals", "A");
-        m_l6.put("ionate", "D");
-        m_l6.put("ioning", "A");
-        m_l6.put("ionist", "A");
-        m_l6.put("iously", "A");
-        m_l6.put("istics", "A");
-        m_l6.put("izable", "E");
-        m_l6.put("lessly", "A");
-        m_l6.put("nesses", "A");
-        m_l6.put("oidism", "A");
-        m_l5 = new HashMap<>();
-        m_l5.put("acies", "A");
-        m_l5.put("acity", "A");
-        m_l5.put("aging", "B");
-        m_l5.put("aical", "A");
+        add("alistically", 'B');
+        add("arizability", 'A');
+        add("izationally", 'B');
+        add("antialness", 'A');
+        add("arisations", 'A');
+        add("arizations", 'A');
+        add("entialness", 'A');
+        add("allically", 'C');
+        add("antaneous", 'A');
+        add("antiality", 'A');
+        add("arisation", 'A');
+        add("arization", 'A');
+        add("ationally", 'B');
+        add("ativeness", 'A');
+        add("eableness", 'E');
+        add("entations", 'A');
+        add("entiality", 'A');
+        add("entialize", 'A');
+        add("entiation", 'A');
+        add("ionalness", 'A');
+        add("istically", 'A');
+        add("itousness", 'A');
+        add("izability", 'A');
+        add("izational", 'A');
+        add("ableness", 'A');
+        add("arizable", 'A');
+        add("entation", 'A');
+        add("entially", 'A');
+        add("eousness", 'A');
+        add("ibleness", 'A');
+        add("icalness", 'A');
+        add("ionalism", 'A');
+        add("ionality", 'A');
+        add("ionalize", 'A');
+        add("iousness", 'A');
+        add("izations", 'A');
+        add("lessness", 'A');
+        add("ability", 'A');
+        add("aically", 'A');
+        add("alistic", 'B');
+        add("alities", 'A');
+        add("ariness", 'E');
+        add("aristic", 'A');
+        add("arizing", 'A');
+        add("ateness", 'A');
+        add("atingly", 'A');
+        add("ational", 'B');
+        add("atively", 'A');
+        add("ativism", 'A');
+        add("elihood", 'E');
+        add("encible", 'A');
+        add("entally", 'A');
+        add("entials", 'A');
+        add("entiate", 'A');
+        add("entness", 'A');
+        add("fulness", 'A');
+        add("ibility", 'A');
+        add("icalism", 'A');
+        add("icalist", 'A');
+        add("icality", 'A');
+        add("icalize", 'A');
+        add("ication", 'G');
+        add("icianry", 'A');
+        add("ination", 'A');
+        add("ingness", 'A');
+        add("ionally", 'A');
+        add("isation", 'A');
+        add("ishness", 'A');
+        add("istical", 'A');
+        add("iteness", 'A');
+        add("iveness", 'A');
+        add("ivistic", 'A');
+        add("ivities", 'A');
+        add("ization", 'F');
+        add("izement", 'A');
+        add("oidally", 'A');
+        add("ousness", 'A');
+        add("aceous", 'A');
+        add("acious", 'B');
+        add("action", 'G');
+        add("alness", 'A');
+        add("ancial", 'A');
+        add("ancies", 'A');
+        add("ancing", 'B');
+        add("ariser", 'A');
+        add("arized", 'A');
+        add("arizer", 'A');
+        add("atable", 'A');
+        add("ations", 'B');
+        add("atives", 'A');
+        add("eature", 'Z');
+        add("efully", 'A');
+        add("encies", 'A');
+        add("encing", 'A');
+        add("ential", 'A');
+        add("enting", 'C');
+        add("entist", 'A');
+        add("eously", 'A');
+        add("ialist", 'A');
+        add("iality", 'A');
+        add("ialize", 'A');
+        add("ically", 'A');
+        add("icance", 'A');
+        add("icians", 'A');
+        add("icists", 'A');
+        add("ifully", 'A');
+        add("ionals", 'A');
+        add("ionate", 'D');
+        add("ioning", 'A');
+        add("ionist", 'A');
+        add("iously", 'A');
+        add("istics", 'A');
+        add("izable", 'E');
+        add("lessly", 'A');
+        add("nesses", 'A');
+        add("oidism", 'A');
+        add("acies", 'A');
+        add("acity", 'A');
+        add("aging", 'B');
+        add("aical", 'A');
         if (!m_CompMode) {
-            m_l5.put("alist", "A");
-        }
-        m_l5.put("alism", "B");
-        m_l5.put("ality", "A");
-        m_l5.put("alize", "A");
-        m_l5.put("allic", "b");
-        m_l5.put("anced", "B");
-        m_l5.put("ances", "B");
-        m_l5.put("antic", "C");
-        m_l5.put("arial", "A");
-        m_l5.put("aries", "A");
-        m_l5.put("arily", "A");
-        m_l5.put("arity", "B");
-        m_l5.put("arize", "A");
-        m_l5.put("aroid", "A");
-        m_l5.put("ately", "A");
-        m_l5.put("ating", "I");
-        m_l5.put("ation", "B");
-        m_l5.put("ative", "A");
-        m_l5.put("ators", "A");
-        m_l5.put("atory", "A");
-        m_l5.put("ature", "E");
-        m_l5.put("early", "Y");
-        m_l5.put("ehood", "A");
-        m_l5.put("eless", "A");
+            add("alist", 'A');
+        }
+        add("alism", 'B');
+        add("ality", 'A');
+        add("alize", 'A');
+        add("allic", 'b');
+        add("anced", 'B');
+        add("ances", 'B');
+        add("antic", 'C');
+        add("arial", 'A');
+        add("aries", 'A');
+        add("arily", 'A');
+        add("arity", 'B');
+        add("arize", 'A');
+        add("aroid", 'A');
+        add("ately", 'A');
+        add("ating", 'I');
+        add("ation", 'B');
+        add("ative", 'A');
+        add("ators", 'A');
+        add("atory", 'A');
+        add("ature", 'E');
+        add("early", 'Y');
+        add("ehood", 'A');
+        add("eless", 'A');
         if (!m_CompMode) {
-            m_l5.put("elily", "A");
+            add("elily", 'A');
         } else {
-            m_l5.put("elity", "A");
-        }
-        m_l5.put("ement", "A");
-        m_l5.put("enced", "A");
-        m_l5.put("ences", "A");
-        m_l5.put("eness", "E");
-        m_l5.put("ening", "E");
-        m_l5.put("ental", "A");
-        m_l5.put("ented", "C");
-        m_l5.put("ently", "A");
-        m_l5.put("fully", "A");
-        m_l5.put("ially", "A");
-        m_l5.put("icant", "A");
-        m_l5.put("ician", "A");
-        m_l5.put("icide", "A");
-        m_l5.put("icism", "A");
-        m_l5.put("icist", "A");
-        m_l5.put("icity", "A");
-        m_l5.put("idine", "I");
-        m_l5.put("iedly", "A");
-        m_l5.put("ihood", "A");
-        m_l5.put("inate", "A");
-        m_l5.put("iness", "A");
-        m_l5.put("ingly", "B");
-        m_l5.put("inism", "J");
-        m_l5.put("inity", "c");
-        m_l5.put("ional", "A");
-        m_l5.put("ioned", "A");
-        m_l5.put("ished", "A");
-        m_l5.put("istic", "A");
-        m_l5.put("ities", "A");
-        m_l5.put("itous", "A");
-        m_l5.put("ively", "A");
-        m_l5.put("ivity", "A");
-        m_l5.put("izers", "F");
-        m_l5.put("izing", "F");
-        m_l5.put("oidal", "A");
-        m_l5.put("oides", "A");
-        m_l5.put("otide", "A");
-        m_l5.put("ously", "A");
-        m_l4 = new HashMap<>();
-        m_l4.put("able", "A");
-        m_l4.put("ably", "A");
-        m_l4.put("ages", "B");
-        m_l4.put("ally", "B");
-        m_l4.put("ance", "B");
-        m_l4.put("ancy", "B");
-        m_l4.put("ants", "B");
-        m_l4.put("aric", "A");
-        m_l4.put("arly", "K");
-        m_l4.put("ated", "I");
-        m_l4.put("ates", "A");
-        m_l4.put("atic", "B");
-        m_l4.put("ator", "A");
-        m_l4.put("ealy", "Y");
-        m_l4.put("edly", "E");
-        m_l4.put("eful", "A");
-        m_l4.put("eity", "A");
-        m_l4.put("ence", "A");
-        m_l4.put("ency", "A");
-        m_l4.put("ened", "E");
-        m_l4.put("enly", "E");
-        m_l4.put("eous", "A");
-        m_l4.put("hood", "A");
-        m_l4.put("ials", "A");
-        m_l4.put("ians", "A");
-        m_l4.put("ible", "A");
-        m_l4.put("ibly", "A");
-        m_l4.put("ical", "A");
-        m_l4.put("ides", "L");
-        m_l4.put("iers", "A");
-        m_l4.put("iful", "A");
-        m_l4.put("ines", "M");
-        m_l4.put("ings", "N");
-        m_l4.put("ions", "B");
-        m_l4.put("ious", "A");
-        m_l4.put("isms", "B");
-        m_l4.put("ists", "A");
-        m_l4.put("itic", "H");
-        m_l4.put("ized", "F");
-        m_l4.put("izer", "F");
-        m_l4.put("less", "A");
-        m_l4.put("lily", "A");
-        m_l4.put("ness", "A");
-        m_l4.put("ogen", "A");
-        m_l4.put("ward", "A");
-        m_l4.put("wise", "A");
-        m_l4.put("ying", "B");
-        m_l4.put("yish", "A");
-        m_l3 = new HashMap<>();
-        m_l3.put("acy", "A");
-        m_l3.put("age", "B");
-        m_l3.put("aic", "A");
-        m_l3.put("als", "b");
-        m_l3.put("ant", "B");
-        m_l3.put("ars", "O");
-        m_l3.put("ary", "F");
-        m_l3.put("ata", "A");
-        m_l3.put("ate", "A");
-        m_l3.put("eal", "Y");
-        m_l3.put("ear", "Y");
-        m_l3.put("ely", "E");
-        m_l3.put("ene", "E");
-        m_l3.put("ent", "C");
-        m_l3.put("ery", "E");
-        m_l3.put("ese", "A");
-        m_l3.put("ful", "A");
-        m_l3.put("ial", "A");
-        m_l3.put("ian", "A");
-        m_l3.put("ics", "A");
-        m_l3.put("ide", "L");
-        m_l3.put("ied", "A");
-        m_l3.put("ier", "A");
-        m_l3.put("ies", "P");
-        m_l3.put("ily", "A");
-        m_l3.put("ine", "M");
-        m_l3.put("ing", "N");
-        m_l3.put("ion", "Q");
-        m_l3.put("ish", "C");
-        m_l3.put("ism", "B");
-        m_l3.put("ist", "A");
-        m_l3.put("ite", "a");
-        m_l3.put("ity", "A");
-        m_l3.put("ium", "A");
-        m_l3.put("ive", "A");
-        m_l3.put("ize", "F");
-        m_l3.put("oid", "A");
-        m_l3.put("one", "R");
-        m_l3.put("ous", "A");
-        m_l2 = new HashMap<>();
-        m_l2.put("ae", "A");
-        m_l2.put("al", "b");
-        m_l2.put("ar", "X");
-        m_l2.put("as", "B");
-        m_l2.put("ed", "E");
-        m_l2.put("en", "F");
-        m_l2.put("es", "E");
-        m_l2.put("ia", "A");
-        m_l2.put("ic", "A");
-        m_l2.put("is", "A");
-        m_l2.put("ly", "B");
-        m_l2.put("on", "S");
-        m_l2.put("or", "T");
-        m_l2.put("um", "U");
-        m_l2.put("us", "V");
-        m_l2.put("yl", "R");
-        m_l2.put("s'", "A");
-        m_l2.put("'s", "A");
-        m_l1 = new HashMap<>();
-        m_l1.put("a", "A");
-        m_l1.put("e", "A");
-        m_l1.put("i", "A");
-        m_l1.put("o", "A");
-        m_l1.put("s", "W");
-        m_l1.put("y", "B");
+            add("elity", 'A');
+        }
+        add("ement", 'A');
+        add("enced", 'A');
+        add("ences", 'A');
+        add("eness", 'E');
+        add("ening", 'E');
+        add("ental", 'A');
+        add("ented", 'C');
+        add("ently", 'A');
+        add("fully", 'A');
+        add("ially", 'A');
+        add("icant", 'A');
+        add("ician", 'A');
+        add("icide", 'A');
+        add("icism", 'A');
+        add("icist", 'A');
+        add("icity", 'A');
+        add("idine", 'I');
+        add("iedly", 'A');
+        add("ihood", 'A');
+        add("inate", 'A');
+        add("iness", 'A');
+        add("ingly", 'B');
+        add("inism", 'J');
+        add("inity", 'c');
+        add("ional", 'A');
+        add("ioned", 'A');
+        add("ished", 'A');
+        add("istic", 'A');
+        add("ities", 'A');
+        add("itous", 'A');
+        add("ively", 'A');
+        add("ivity", 'A');
+        add("izers", 'F');
+        add("izing", 'F');
+        add("oidal", 'A');
+        add("oides", 'A');
+        add("otide", 'A');
+        add("ously", 'A');
+        add("able", 'A');
+        add("ably", 'A');
+        add("ages", 'B');
+        add("ally", 'B');
+        add("ance", 'B');
+        add("ancy", 'B');
+        add("ants", 'B');
+        add("aric", 'A');
+        add("arly", 'K');
+        add("ated", 'I');
+        add("ates", 'A');
+        add("atic", 'B');
+        add("ator", 'A');
+        add("ealy", 'Y');
+        add("edly", 'E');
+        add("eful", 'A');
+        add("eity", 'A');
+        add("ence", 'A');
+        add("ency", 'A');
+        add("ened", 'E');
+        add("enly", 'E');
+        add("eous", 'A');
+        add("hood", 'A');
+        add("ials", 'A');
+        add("ians", 'A');
+        add("ible", 'A');
+        add("ibly", 'A');
+        add("ical", 'A');
+        add("ides", 'L');
+        add("iers", 'A');
+        add("iful", 'A');
+        add("ines", 'M');
+        add("ings", 'N');
+        add("ions", 'B');
+        add("ious", 'A');
+        add("isms", 'B');
+        add("ists", 'A');
+        add("itic", 'H');
+        add("ized", 'F');
+        add("izer", 'F');
+        add("less", 'A');
+        add("lily", 'A');
+        add("ness", 'A');
+        add("ogen", 'A');
+        add("ward", 'A');
+        add("wise", 'A');
+        add("ying", 'B');
+        add("yish", 'A');
+        add("acy", 'A');
+        add("age", 'B');
+        add("aic", 'A');
+        add("als", 'b');
+        add("ant", 'B');
+        add("ars", 'O');
+        add("ary", 'F');
+        add("ata", 'A');
+        add("ate", 'A');
+        add("eal", 'Y');
+        add("ear", 'Y');
+        add("ely", 'E');
+        add("ene", 'E');
+        add("ent", 'C');
+        add("ery", 'E');
+        add("ese", 'A');
+        add("ful", 'A');
+        add("ial", 'A');
+        add("ian", 'A');
+        add("ics", 'A');
+        add("ide", 'L');
+        add("ied", 'A');
+        add("ier", 'A');
+        add("ies", 'P');
+        add("ily", 'A');
+        add("ine", 'M');
+        add("ing", 'N');
+        add("ion", 'Q');
+        add("ish", 'C');
+        add("ism", 'B');
+        add("ist", 'A');
+        add("ite", 'a');
+        add("ity", 'A');
+        add("ium", 'A');
+        add("ive", 'A');
+        add("ize", 'F');
+        add("oid", 'A');
+        add("one", 'R');
+        add("ous", 'A');
+        add("ae", 'A');
+        add("al", 'b');
+        add("ar", 'X');
+        add("as", 'B');
+        add("ed", 'E');
+        add("en", 'F');
+        add("es", 'E');
+        add("ia", 'A');
+        add("ic", 'A');
+        add("is", 'A');
+        add("ly", 'B');
+        add("on", 'S');
+        add("or", 'T');
+        add("um", 'U');
+        add("us", 'V');
+        add("yl", 'R');
+        add("s'", 'A');
+        add("'s", 'A');
+        add("a", 'A');
+        add("e", 'A');
+        add("i", 'A');
+        add("o", 'A');
+        add("s", 'W');
+        add("y", 'B');
+
+        label = ArrayUtil.copyOfSubArray(label, 0, nodes);
+        firstChild = ArrayUtil.copyOfSubArray(firstChild, 0, nodes);
+        nextSibling = ArrayUtil.copyOfSubArray(nextSibling, 0, nodes);
+        condition = ArrayUtil.copyOfSubArray(condition, 0, nodes);
     }
 
     private final CharTermAttribute termAtt = addAttribute(CharTermAttribute.class);
     private final KeywordAttribute keywordAttr = addAttribute(KeywordAttribute.class);
     private final OffsetAttribute offsetAttribute = addAttribute(OffsetAttribute.class);
 
+    /**
+     * The word being stemmed.
+     */
+    private char[] word = new char[32];
+
+    /**
+     * The length of the word being stemmed.
+     */
+    private int length;
+
+    /**
+     * The trie nodes matched by the endings of the word, by length of the ending.
+     */
+    private final int[] path = new int[MAX_ENDING + 1];
+
     /**
      * Creates a new Lovin's stemmer.
      *
@@ -388,455 +402,288 @@ public class LovinsStemFilter extends TokenFilter {
     }
 
     /**
-     * Finds and removes ending from given word.
+     * Adds an ending to the trie.
      *
-     * @param word the word to be processed.
-     * @return the processed word.
+     * @param ending        the ending.
+     * @param conditionCode the condition for removing the ending.
      */
-    private static final String removeEnding(String word) {
-
-        int length = word.length();
-        int el = 11;
-
-        while (el > 0) {
-            if (length - el > 1) {
-                String ending = word.substring(length - el);
-                String conditionCode = null;
-                switch (el) {
-                    case 11:
-                        conditionCode = m_l11.get(ending);
-                        break;
-                    case 10:
-                        conditionCode = m_l10.get(ending);
-                        break;
-                    case 9:
-                        conditionCode = m_l9.get(ending);
-                        break;
-                    case 8:
-                        conditionCode = m_l8.get(ending);
-                        break;
-                    case 7:
-                        conditionCode = m_l7.get(ending);
-                        break;
-                    case 6:
-                        conditionCode = m_l6.get(ending);
-                        break;
-                    case 5:
-                        conditionCode = m_l5.get(ending);
-                        break;
-                    case 4:
-                        conditionCode = m_l4.get(ending);
-                        break;
-                    case 3:
-                        conditionCode = m_l3.get(ending);
-                        break;
-                    case 2:
-                        conditionCode = m_l2.get(ending);
-                        break;
-                    case 1:
-                        conditionCode = m_l1.get(ending);
-                        break;
-                    default:
-                }
-                if (conditionCode != null) {
-                    switch (conditionCode) {
-                        case "A":
-                            return word.substring(0, length - el);
-                        case "B":
-                            if (length - el > 2) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "C":
-                            if (length - el > 3) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "D":
-                            if (length - el > 4) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "E":
-                            if (word.charAt(length - el - 1) != 'e') {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "F":
-                            if ((length - el > 2) && (word.charAt(length - el - 1) != 'e')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "G":
-                            if ((length - el > 2) && (word.charAt(length - el - 1) == 'f')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "H":
-                            if ((word.charAt(length - el - 1) == 't') || ((word.charAt(length - el - 1) == 'l') && (word
-                                    .charAt(length - el - 2) == 'l'))) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "I":
-                            if ((word.charAt(length - el - 1) != 'o') && (word.charAt(length - el - 1) != 'e')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "J":
-                            if ((word.charAt(length - el - 1) != 'a') && (word.charAt(length - el - 1) != 'e')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "K":
-                            if ((length - el > 2) && ((word.charAt(length - el - 1) == 'l') || (word
-                                    .charAt(length - el - 1) == 'i') || ((word.charAt(length - el - 1) == 'e') && (word
-                                    .charAt(length - el - 3) == 'u')))) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "L":
-                            if ((word.charAt(length - el - 1) != 'u') && (word.charAt(length - el - 1) != 'x') && ((word
-                                    .charAt(length - el - 1) != 's') || (word.charAt(length - el - 2) == 'o'))) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "M":
-                            if ((word.charAt(length - el - 1) != 'a') && (word.charAt(length - el - 1) != 'c') && (word
-                                    .charAt(length - el - 1) != 'e') && (word.charAt(length - el - 1) != 'm')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "N":
-                            if ((length - el > 3) || ((length - el == 3) && ((word.charAt(length - el - 3) != 's')))) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "O":
-                            if ((word.charAt(length - el - 1) == 'l') || (word.charAt(length - el - 1) == 'i')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "P":
-                            if (word.charAt(length - el - 1) != 'c') {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "Q":
-                            if ((length - el > 2) && (word.charAt(length - el - 1) != 'l') && (word
-                                    .charAt(length - el - 1) != 'n')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "R":
-                            if ((word.charAt(length - el - 1) == 'n') || (word.charAt(length - el - 1) == 'r')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "S":
-                            if (((word.charAt(length - el - 1) == 'r') && (word
-                                    .charAt(length - el - 2) == 'd')) || ((word.charAt(length - el - 1) == 't') && (word
-                                    .charAt(length - el - 2) != 't'))) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "T":
-                            if ((word.charAt(length - el - 1) == 's') || ((word.charAt(length - el - 1) == 't') && (word
-                                    .charAt(length - el - 2) != 'o'))) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "U":
-                            if ((word.charAt(length - el - 1) == 'l') || (word.charAt(length - el - 1) == 'm') || (word
-                                    .charAt(length - el - 1) == 'n') || (word.charAt(length - el - 1) == 'r')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "V":
-                            if (word.charAt(length - el - 1) == 'c') {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "W":
-                            if ((word.charAt(length - el - 1) != 's') && (word.charAt(length - el - 1) != 'u')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "X":
-                            if ((word.charAt(length - el - 1) == 'l') || (word
-                                    .charAt(length - el - 1) == 'i') || ((length - el > 2) && (word
-                                    .charAt(length - el - 1) == 'e') && (word.charAt(length - el - 3) == 'u'))) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "Y":
-                            if ((word.charAt(length - el - 1) == 'n') && (word.charAt(length - el - 2) == 'i')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "Z":
-                            if (word.charAt(length - el - 1) != 'f') {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "a":
-                            if ((word.charAt(length - el - 1) == 'd') || (word
-                                    .charAt(length - el - 1) == 'f') || (((word.charAt(length - el - 1) == 'h') && (word
-                                    .charAt(length - el - 2) == 'p'))) || (((word
-                                    .charAt(length - el - 1) == 'h') && (word.charAt(length - el - 2) == 't'))) || (word
-                                    .charAt(length - el - 1) == 'l') || (((word.charAt(length - el - 1) == 'r') && (word
-                                    .charAt(length - el - 2) == 'e'))) || (((word
-                                    .charAt(length - el - 1) == 'r') && (word
-                                    .charAt(length - el - 2) == 'o'))) || (((word
-                                    .charAt(length - el - 1) == 's') && (word.charAt(length - el - 2) == 'e'))) || (word
-                                    .charAt(length - el - 1) == 't')) {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        case "b":
-                            if (m_CompMode) {
-                                if (((length - el == 3) && (!((word.charAt(length - el - 1) == 't') && (word
-                                        .charAt(length - el - 2) == 'e') && (word
-                                        .charAt(length - el - 3) == 'm')))) || ((length - el > 3) && (!((word
-                                        .charAt(length - el - 1) == 't') && (word
-                                        .charAt(length - el - 2) == 's') && (word
-                                        .charAt(length - el - 3) == 'y') && (word.charAt(length - el - 4) == 'r'))))) {
-                                    return word.substring(0, length - el);
-                                }
-                            } else {
-                                if ((length - el > 2) && (!((word.charAt(length - el - 1) == 't') && (word
-                                        .charAt(length - el - 2) == 'e') && (word
-                                        .charAt(length - el - 3) == 'm'))) && ((length - el < 4) || (!((word
-                                        .charAt(length - el - 1) == 't') && (word
-                                        .charAt(length - el - 2) == 's') && (word
-                                        .charAt(length - el - 3) == 'y') && (word.charAt(length - el - 4) == 'r'))))) {
-                                    return word.substring(0, length - el);
-                                }
-                            }
-                            break;
-                        case "c":
-                            if (word.charAt(length - el - 1) == 'l') {
-                                return word.substring(0, length - el);
-                            }
-                            break;
-                        default:
-                            throw new IllegalArgumentException("Fatal error.");
-                    }
+    private static void add(final String ending, final char conditionCode) {
+
+        int node = 0;
+        for (int i = ending.length() - 1; i >= 0; i--) {
+            int child = child(node, ending.charAt(i));
+            if (child == 0) {
+                if (nodes == label.length) {
+                    label = ArrayUtil.grow(label);
+                    firstChild = ArrayUtil.grow(firstChild, label.length);
+                    nextSibling = ArrayUtil.grow(nextSibling, label.length);
+                    condition = ArrayUtil.grow(condition, label.length);
                 }
+                child = nodes++;
+                label[child] = ending.charAt(i);
+                nextSibling[child] = firstChild[node];
+                firstChild[node] = child;
             }
-            el--;
+            node = child;
         }
-        return word;
+        condition[node] = conditionCode;
     }
 
     /**
-     * Recodes ending of given word.
+     * Returns the child of a node of the trie.
      *
-     * @param word the word to be processed.
-     * @return the processed word.
+     * @param node the node.
+     * @param c    the character of the child.
+     * @return the child, 0 if there is no such child.
      */
-    private static final String recodeEnding(String word) {
-
-        int lastPos = word.length() - 1;
-
-        // Rule 1
-        if (word.endsWith("bb") || word.endsWith("dd") || word.endsWith("gg") || word.endsWith("ll") || word
-                .endsWith("mm") || word.endsWith("nn") || word.endsWith("pp") || word.endsWith("rr") || word
-                .endsWith("ss") || word.endsWith("tt")) {
-            word = word.substring(0, lastPos);
-            lastPos--;
-        }
-
-        // Rule 2
-        if (word.endsWith("iev")) {
-            word = word.substring(0, lastPos - 2).concat("ief");
-        }
-
-        // Rule 3
-        if (word.endsWith("uct")) {
-            word = word.substring(0, lastPos - 2).concat("uc");
-            lastPos--;
-        }
-
-        // Rule 4
-        if (word.endsWith("umpt")) {
-            word = word.substring(0, lastPos - 3).concat("um");
-            lastPos -= 2;
-        }
-
-        // Rule 5
-        if (word.endsWith("rpt")) {
-            word = word.substring(0, lastPos - 2).concat("rb");
-            lastPos--;
-        }
-
-        // Rule 6
-        if (word.endsWith("urs")) {
-            word = word.substring(0, lastPos - 2).concat("ur");
-            lastPos--;
+    private static int child(final int node, final char c) {
+        int child = firstChild[node];
+        while (child != 0 && label[child] != c) {
+            child = nextSibling[child];
         }
+        return child;
+    }
 
-        // Rule 7
-        if (word.endsWith("istr")) {
-            word = word.substring(0, lastPos - 3).concat("ister");
-            lastPos++;
-        }
+    /**
+     * Finds and removes ending from the word.
+     */
+    private void removeEnding() {
 
-        // Rule 7a
-        if (word.endsWith("metr")) {
-            word = word.substring(0, lastPos - 3).concat("meter");
-            lastPos++;
-        }
+        final char[] w = word;
 
-        // Rule 8
-        if (word.endsWith("olv")) {
-            word = word.substring(0, lastPos - 2).concat("olut");
-            lastPos++;
+        //the stem must be at least two characters long
+        final int max = Math.min(MAX_ENDING, length - 2);
+        int el = 0;
+        int node = 0;
+        while (el < max && (node = child(node, w[length - 1 - el])) != 0) {
+            path[++el] = node;
         }
 
-        // Rule 9
-        if (word.endsWith("ul")) {
-            if ((lastPos - 2 < 0) || ((word.charAt(lastPos - 2) != 'a') && (word.charAt(lastPos - 2) != 'i') && (word
-                    .charAt(lastPos - 2) != 'o'))) {
-                word = word.substring(0, lastPos - 1).concat("l");
-                lastPos--;
+        //the longest ending whose condition holds is removed
+        for (; el > 0; el--) {
+            final char conditionCode = condition[path[el]];
+            if (conditionCode != 0 && removable(conditionCode, w, length - el)) {
+                length -= el;
+                return;
             }
         }
+    }
 
-        // Rule 10
-        if (word.endsWith("bex")) {
-            word = word.substring(0, lastPos - 2).concat("bic");
-        }
-
-        // Rule 11
-        if (word.endsWith("dex")) {
-            word = word.substring(0, lastPos - 2).concat("dic");
-        }
-
-        // Rule 12
-        if (word.endsWith("pex")) {
-            word = word.substring(0, lastPos - 2).concat("pic");
+    /**
+     * Checks the condition for removing an ending.
+     *
+     * @param conditionCode the condition code of the ending.
+     * @param w             the word.
+     * @param s             the length of the stem, i.e. of the word without the ending.
+     * @return {@code true} if the ending can be removed, {@code false} otherwise.
+     */
+    private static boolean removable(final char conditionCode, final char[] w, final int s) {
+
+        switch (conditionCode) {
+            case 'A':
+                return true;
+            case 'B':
+                return s > 2;
+            case 'C':
+                return s > 3;
+            case 'D':
+                return s > 4;
+            case 'E':
+                return w[s - 1] != 'e';
+            case 'F':
+                return (s > 2) && (w[s - 1] != 'e');
+            case 'G':
+                return (s > 2) && (w[s - 1] == 'f');
+            case 'H':
+                return (w[s - 1] == 't') || ((w[s - 1] == 'l') && (w[s - 2] == 'l'));
+            case 'I':
+                return (w[s - 1] != 'o') && (w[s - 1] != 'e');
+            case 'J':
+                return (w[s - 1] != 'a') && (w[s - 1] != 'e');
+            case 'K':
+                return (s > 2) && ((w[s - 1] == 'l') || (w[s - 1] == 'i') || ((w[s - 1] == 'e') && (w[s - 3] == 'u')));
+            case 'L':
+                return (w[s - 1] != 'u') && (w[s - 1] != 'x') && ((w[s - 1] != 's') || (w[s - 2] == 'o'));
+            case 'M':
+                return (w[s - 1] != 'a') && (w[s - 1] != 'c') && (w[s - 1] != 'e') && (w[s - 1] != 'm');
+            case 'N':
+                return (s > 3) || ((s == 3) && (w[s - 3] != 's'));
+            case 'O':
+                return (w[s - 1] == 'l') || (w[s - 1] == 'i');
+            case 'P':
+                return w[s - 1] != 'c';
+            case 'Q':
+                return (s > 2) && (w[s - 1] != 'l') && (w[s - 1] != 'n');
+            case 'R':
+                return (w[s - 1] == 'n') || (w[s - 1] == 'r');
+            case 'S':
+                return ((w[s - 1] == 'r') && (w[s - 2] == 'd')) || ((w[s - 1] == 't') && (w[s - 2] != 't'));
+            case 'T':
+                return (w[s - 1] == 's') || ((w[s - 1] == 't') && (w[s - 2] != 'o'));
+            case 'U':
+                return (w[s - 1] == 'l') || (w[s - 1] == 'm') || (w[s - 1] == 'n') || (w[s - 1] == 'r');
+            case 'V':
+                return w[s - 1] == 'c';
+            case 'W':
+                return (w[s - 1] != 's') && (w[s - 1] != 'u');
+            case 'X':
+                return (w[s - 1] == 'l') || (w[s - 1] == 'i') || ((s > 2) && (w[s - 1] == 'e') && (w[s - 3] == 'u'));
+            case 'Y':
+                return (w[s - 1] == 'n') && (w[s - 2] == 'i');
+            case 'Z':
+                return w[s - 1] != 'f';
+            case 'a':
+                return (w[s - 1] == 'd') || (w[s - 1] == 'f') || ((w[s - 1] == 'h') && (w[s - 2] == 'p'))
+                        || ((w[s - 1] == 'h') && (w[s - 2] == 't')) || (w[s - 1] == 'l')
+                        || ((w[s - 1] == 'r') && (w[s - 2] == 'e')) || ((w[s - 1] == 'r') && (w[s - 2] == 'o'))
+                        || ((w[s - 1] == 's') && (w[s - 2] == 'e')) || (w[s - 1] == 't');
+            case 'b':
+                if (m_CompMode) {
+                    return ((s == 3) && (!((w[s - 1] == 't') && (w[s - 2] == 'e') && (w[s - 3] == 'm'))))
+                            || ((s > 3) && (!((w[s - 1] == 't') && (w[s - 2] == 's') && (w[s - 3] == 'y')
+                            && (w[s - 4] == 'r'))));
+                }
+                return (s > 2) && (!((w[s - 1] == 't') && (w[s - 2] == 'e') && (w[s - 3] == 'm')))
+                        && ((s < 4) || (!((w[s - 1] == 't') && (w[s - 2] == 's') && (w[s - 3] == 'y')
+                        && (w[s - 4] == 'r'))));
+            case 'c':
+                return w[s - 1] == 'l';
+            default:
+                throw new IllegalArgumentException("Fatal error.");
         }
+    }
 
-        // Rule 13
-        if (word.endsWith("tex")) {
-            word = word.substring(0, lastPos - 2).concat("tic");
-        }
+    /**
+     * Checks whether the word ends with the given suffix.
+     *
+     * @param suffix the suffix.
+     * @return {@code true} if the word ends with the suffix, {@code false} otherwise.
+     */
+    private boolean endsWith(final String suffix) {
 
-        // Rule 14
-        if (word.endsWith("ax")) {
-            word = word.substring(0, lastPos - 1).concat("ac");
+        final int n = suffix.length();
+        if (n > length) {
+            return false;
         }
-
-        // Rule 15
-        if (word.endsWith("ex")) {
-            word = word.substring(0, lastPos - 1).concat("ec");
+        for (int i = 0; i < n; i++) {
+            if (word[length - n + i] != suffix.charAt(i)) {
+                return false;
+            }
         }
+        return true;
+    }
 
-        // Rule 16
-        if (word.endsWith("ix")) {
-            word = word.substring(0, lastPos - 1).concat("ic");
-        }
+    /**
+     * Replaces the last characters of the word.
+     *
+     * @param n           the number of characters to be replaced.
+     * @param replacement the characters replacing them.
+     */
+    private void replace(final int n, final String replacement) {
 
-        // Rule 17
-        if (word.endsWith("lux")) {
-            word = word.substring(0, lastPos - 2).concat("luc");
-        }
+        final int start = length - n;
+        length = start + replacement.length();
+        word = ArrayUtil.grow(word, length);
+        replacement.getChars(0, replacement.length(), word, start);
+    }
 
-        // Rule 18
-        if (word.endsWith("uad")) {
-            word = word.substring(0, lastPos - 2).concat("uas");
+    /**
+     * Replaces an ending of the word, if the word ends with it.
+     *
+     * @param ending      the ending.
+     * @param replacement the characters replacing it.
+     */
+    private void recode(final String ending, final String replacement) {
+        if (endsWith(ending)) {
+            replace(ending.length(), replacement);
         }
+    }
 
-        // Rule 19
-        if (word.endsWith("vad")) {
-            word = word.substring(0, lastPos - 2).concat("vas");
-        }
+    /**
+     * Recodes ending of the word.
+     */
+    private void recodeEnding() {
 
-        // Rule 20
-        if (word.endsWith("cid")) {
-            word = word.substring(0, lastPos - 2).concat("cis");
+        // Rule 1
+        if (length > 1 && word[length - 1] == word[length - 2] && "bdglmnprst".indexOf(word[length - 1]) >= 0) {
+            length--;
         }
 
-        // Rule 21
-        if (word.endsWith("lid")) {
-            word = word.substring(0, lastPos - 2).concat("lis");
-        }
+        // Rules 2-8
+        recode("iev", "ief");
+        recode("uct", "uc");
+        recode("umpt", "um");
+        recode("rpt", "rb");
+        recode("urs", "ur");
+        recode("istr", "ister");
+        recode("metr", "meter");
+        recode("olv", "olut");
 
-        // Rule 22
-        if (word.endsWith("erid")) {
-            word = word.substring(0, lastPos - 3).concat("eris");
+        // Rule 9
+        if (endsWith("ul")) {
+            if ((length - 3 < 0) || ((word[length - 3] != 'a') && (word[length - 3] != 'i') && (word[length - 3] != 'o'))) {
+                replace(2, "l");
+            }
         }
 
-        // Rule 23
-        if (word.endsWith("pand")) {
-            word = word.substring(0, lastPos - 3).concat("pans");
-        }
+        // Rules 10-23
+        recode("bex", "bic");
+        recode("dex", "dic");
+        recode("pex", "pic");
+        recode("tex", "tic");
+        recode("ax", "ac");
+        recode("ex", "ec");
+        recode("ix", "ic");
+        recode("lux", "luc");
+        recode("uad", "uas");
+        recode("vad", "vas");
+        recode("cid", "cis");
+        recode("lid", "lis");
+        recode("erid", "eris");
+        recode("pand", "pans");
 
         // Rule 24
-        if (word.endsWith("end")) {
-            if ((lastPos - 3 < 0) || (word.charAt(lastPos - 3) != 's')) {
-                word = word.substring(0, lastPos - 2).concat("ens");
+        if (endsWith("end")) {
+            if ((length - 4 < 0) || (word[length - 4] != 's')) {
+                replace(3, "ens");
             }
         }
 
-        // Rule 25
-        if (word.endsWith("ond")) {
-            word = word.substring(0, lastPos - 2).concat("ons");
-        }
-
-        // Rule 26
-        if (word.endsWith("lud")) {
-            word = word.substring(0, lastPos - 2).concat("lus");
-        }
-
-        // Rule 27
-        if (word.endsWith("rud")) {
-            word = word.substring(0, lastPos - 2).concat("rus");
-        }
+        // Rules 25-27
+        recode("ond", "ons");
+        recode("lud", "lus");
+        recode("rud", "rus");
 
         // Rule 28
-        if (word.endsWith("her")) {
-            if ((lastPos - 3 < 0) || ((word.charAt(lastPos - 3) != 'p') && (word.charAt(lastPos - 3) != 't'))) {
-                word = word.substring(0, lastPos - 2).concat("hes");
+        if (endsWith("her")) {
+            if ((length - 4 < 0) || ((word[length - 4] != 'p') && (word[length - 4] != 't'))) {
+                replace(3, "hes");
             }
         }
 
         // Rule 29
-        if (word.endsWith("mit")) {
-            word = word.substring(0, lastPos - 2).concat("mis");
-        }
+        recode("mit", "mis");
 
         // Rule 30
-        if (word.endsWith("end")) {
-            if ((lastPos - 3 < 0) || (word.charAt(lastPos - 3) != 'm')) {
-                word = word.substring(0, lastPos - 2).concat("ens");
+        if (endsWith("end")) {
+            if ((length - 4 < 0) || (word[length - 4] != 'm')) {
+                replace(3, "ens");
             }
         }
 
         // Rule 31
-        if (word.endsWith("ert")) {
-            word = word.substring(0, lastPos - 2).concat("ers");
-        }
+        recode("ert", "ers");
 
         // Rule 32
-        if (word.endsWith("et")) {
-            if ((lastPos - 2 < 0) || (word.charAt(lastPos - 2) != 'n')) {
-                word = word.substring(0, lastPos - 1).concat("es");
+        if (endsWith("et")) {
+            if ((length - 3 < 0) || (word[length - 3] != 'n')) {
+                replace(2, "es");
             }
         }
 
-        // Rule 33
-        if (word.endsWith("yt")) {
-            word = word.substring(0, lastPos - 1).concat("ys");
-        }
-
-        // Rule 34
-        if (word.endsWith("yz")) {
-            word = word.substring(0, lastPos - 1).concat("ys");
-        }
-
-        return word;
+        // Rules 33-34
+        recode("yt", "ys");
+        recode("yz", "ys");
     }
 
     @Override
@@ -846,25 +693,26 @@ public class LovinsStemFilter extends TokenFilter {
             return false;
         }
 
+        // the word spans the offsets of the token, thus it may include characters removed from the term buffer by
+        // the previous filters, e.g. the possessive 's
+        final int termLength = offsetAttribute.endOffset() - offsetAttribute.startOffset();
+        final char[] buffer = termAtt.buffer();
+        Objects.checkFromToIndex(0, termLength, buffer.length);
 
-        String term = new String(termAtt.buffer());
-
-        int startOffset = offsetAttribute.startOffset();
-        int endOffset = offsetAttribute.endOffset();
-        term = term.substring(0, endOffset - startOffset);
-
-        // skip too short terms to be stemmed
-        if (term.length() < 3) {
+        // skip too short terms to be stemmed, and keywords
+        if (termLength < 3 || keywordAttr.isKeyword()) {
             return true;
         }
 
-        String stem = recodeEnding(term);
-        stem = removeEnding(stem);
+        word = ArrayUtil.grow(word, termLength);
+        System.arraycopy(buffer, 0, word, 0, termLength);
+        length = termLength;
+
+        recodeEnding();
+        removeEnding();
 
-        if ((!keywordAttr.isKeyword()) && term.length() != stem.length()) {
-            termAtt.resizeBuffer(stem.length());
-            termAtt.copyBuffer(stem.toCharArray(), 0, stem.length());
-            termAtt.setLength(stem.length());
+        if (length != termLength) {
+            termAtt.copyBuffer(word, 0, length);
         }
 
         return true;
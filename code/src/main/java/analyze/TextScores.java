@@ -0,0 +1,57 @@
+package analyze;
+
+import com.vader.sentiment.analyzer.SentimentAnalyzer;
+import io.whelk.flesch.kincaid.ReadabilityCalculator;
+
+import java.io.IOException;
+
+/**
+ * Scores computed on the text of the documents, both at index time and when re-ranking the documents at search time.
+ *
+ * @author Elham Soleymani (elham.soleymani@studenti.unipd.it)
+ * @author Riccardo Forzan (riccardo.forzan@studenti.unipd.it)
+ * @version 1.00
+ * @since 1.00
+ */
+public final class TextScores {
+
+    /**
+     * This class cannot be instantiated.
+     */
+    private TextScores() {
+    }
+
+    /**
+     * Assign sentiment score to a document
+     *
+     * @param text string that contains the text of the document
+     * @return score sentiment score of the document, 0 (neutral) if it cannot be computed
+     */
+    public static float getDocumentSentimentScore(String text){
+        SentimentAnalyzer textSentimentAnalyzer;
+        float sentimentScore = 0;
+        try {
+            textSentimentAnalyzer = new SentimentAnalyzer(text);
+            textSentimentAnalyzer.analyze();
+            sentimentScore = textSentimentAnalyzer.getPolarity().get("compound");
+        } catch (IOException e) {
+            System.out.println("Unable to compute the sentiment score, the text is considered neutral: " + e.getMessage());
+        }
+        return sentimentScore;
+    }
+
+    /**
+     * assign readability score to a document
+     * @param text string that contains the text of the document
+     * @return score readability score of the document, 0 (no boost) if the text is empty or its score is not finite
+     */
+    public static float getDocumentReadabilityScore(String text){
+        //an empty text has no reading ease: a NaN score would rank the document before every other one
+        if (text == null || text.isBlank()) {
+            return 0;
+        }
+        final float readabilityScore = (float) ReadabilityCalculator.calculateReadingEase(text);
+        return Float.isFinite(readabilityScore) ? readabilityScore : 0;
+    }
+
+}
@@ -23,7 +23,7 @@ import static analyze.AnalyzerUtil.loadStopList;
 public class ToucheAnalyzerTuning extends Analyzer {
 
     private final String stopListFile;
-    private final Class<TokenFilter> stemmer;
+    private final Class<? extends TokenFilter> stemmer;
 
     /**
      * default constructor
@@ -31,7 +31,7 @@ public class ToucheAnalyzerTuning extends Analyzer {
      * @param stopList name of the stoplist to be used
      * @param stemmer class of the stem filter to be applied
      */
-    public ToucheAnalyzerTuning(String stopList, Class<TokenFilter> stemmer) {
+    public ToucheAnalyzerTuning(String stopList, Class<? extends TokenFilter> stemmer) {
         super();
         this.stopListFile=stopList;
         this.stemmer=stemmer;
@@ -51,7 +51,7 @@ public class ToucheAnalyzerTuning extends Analyzer {
         if(stopListFile == null && stemmer!=null) {
             //aplly only the stemmer
             try {
-                Constructor<?> consStemmer = stemmer.getConstructor(TokenStreamComponents.class);
+                Constructor<?> consStemmer = stemmer.getConstructor(TokenStream.class);
                 Object stemFilter = consStemmer.newInstance(tokens);
                 tokens = (TokenStream) stemFilter;
             } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
@@ -65,7 +65,7 @@ public class ToucheAnalyzerTuning extends Analyzer {
 
             //aplly the stemmer
             try {
-                Constructor<?> consStemmer = stemmer.getConstructor(TokenStreamComponents.class);
+                Constructor<?> consStemmer = stemmer.getConstructor(TokenStream.class);
                 Object stemFilter = consStemmer.newInstance(tokens);
                 tokens = (TokenStream) stemFilter;
             } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
@@ -1,14 +1,13 @@
 package index;
 
 import org.apache.lucene.document.Field;
-import org.apache.lucene.document.FieldType;
-import org.apache.lucene.index.IndexOptions;
 
 import java.io.Reader;
 
 /**
  * Represents a {@link Field} for containing additional information for the body field such as conclusion, stance, discussion title, source title and so on
- * It's a tokenized field, not stored, keeping term frequencies, positions and offsets (see {@link IndexOptions#DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS})
+ * It's a tokenized field keeping term frequencies and positions; offsets, term vectors and stored values depend on
+ * the {@link SchemaProfile} of the index (none of them by default).
  *
  * @author Manuel Barusco (manuel.barusco@studenti.unipd.it)
  * @version 1.00
@@ -16,18 +15,6 @@ import java.io.Reader;
  */
 public class BodyCorrelatedField extends Field {
 
-    /**
-     * The type of the document body field
-     */
-    private static final FieldType BODYCORRELATED_TYPE = new FieldType();
-
-    static {
-        BODYCORRELATED_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
-        BODYCORRELATED_TYPE.setTokenized(true);
-        BODYCORRELATED_TYPE.setStored(false);
-        BODYCORRELATED_TYPE.setStoreTermVectors(true);
-    }
-
     /**
      * Create a new field for additional body-correlated information
      *
@@ -35,7 +22,7 @@ public class BodyCorrelatedField extends Field {
      * @param value the content of the field
      */
     public BodyCorrelatedField(final String field, final Reader value) {
-        super(field, value, BODYCORRELATED_TYPE);
+        super(field, value, SchemaProfile.SEARCH_ONLY.bodyCorrelatedType());
     }
 
     /**
@@ -45,7 +32,18 @@ public class BodyCorrelatedField extends Field {
      * @param value the content of the field
      */
     public BodyCorrelatedField(final String field, final String value) {
-        super(field, value, BODYCORRELATED_TYPE);
+        super(field, value, SchemaProfile.SEARCH_ONLY.bodyCorrelatedType());
+    }
+
+    /**
+     * Create a new field for additional body-correlated information
+     *
+     * @param field   the name of the field that contains additional body-correlated information
+     * @param value   the content of the field
+     * @param profile the schema profile of the index
+     */
+    public BodyCorrelatedField(final String field, final String value, final SchemaProfile profile) {
+        super(field, value, profile.bodyCorrelatedType());
     }
 
 }
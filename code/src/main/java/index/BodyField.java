@@ -1,15 +1,14 @@
 package index;
 
 import org.apache.lucene.document.Field;
-import org.apache.lucene.document.FieldType;
-import org.apache.lucene.index.IndexOptions;
 import parse.ParsedDocument;
 
 import java.io.Reader;
 
 /**
  * Represents a {@link Field} for containing the body of a document.
- * It's a tokenized field, not stored, keeping term frequencies, positions and offsets (see {@link IndexOptions#DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS})
+ * It's a tokenized field keeping term frequencies and positions; offsets, term vectors and stored values depend on
+ * the {@link SchemaProfile} of the index (none of them by default).
  *
  * @author Mario Giovanni Peloso (ferro@dei.unipd.it)
  * @author Manuel Barusco (manuel.barusco@studenti.unipd.it)
@@ -19,34 +18,42 @@ import java.io.Reader;
 public class BodyField extends Field {
 
     /**
-     * The type of the document body field
+     * Create a new field for the body of a document.
+     *
+     * @param value the contents of the body of a document.
      */
-    private static final FieldType BODY_TYPE = new FieldType();
-
-    static {
-        BODY_TYPE.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
-        BODY_TYPE.setTokenized(true);
-        BODY_TYPE.setStored(false);
-        BODY_TYPE.setStoreTermVectors(true);
+    public BodyField(final Reader value) {
+        super(ParsedDocument.FIELDS.SOURCE_TEXT, value, SchemaProfile.SEARCH_ONLY.bodyType());
     }
 
-
     /**
      * Create a new field for the body of a document.
      *
      * @param value the contents of the body of a document.
      */
-    public BodyField(final Reader value) {
-        super(ParsedDocument.FIELDS.SOURCE_TEXT, value, BODY_TYPE);
+    public BodyField(final String value) {
+        super(ParsedDocument.FIELDS.SOURCE_TEXT, value, SchemaProfile.SEARCH_ONLY.bodyType());
+    }
+
+    /**
+     * Create a new field for the body of a document, analyzed while it is read. The field cannot be stored, so the
+     * schema profile must not store the body.
+     *
+     * @param value   the contents of the body of a document.
+     * @param profile the schema profile of the index.
+     */
+    public BodyField(final Reader value, final SchemaProfile profile) {
+        super(ParsedDocument.FIELDS.SOURCE_TEXT, value, profile.bodyType());
     }
 
     /**
      * Create a new field for the body of a document.
      *
-     * @param value the contents of the body of a document.
+     * @param value   the contents of the body of a document.
+     * @param profile the schema profile of the index.
      */
-    public BodyField(final String value) {
-        super(ParsedDocument.FIELDS.SOURCE_TEXT, value, BODY_TYPE);
+    public BodyField(final String value, final SchemaProfile profile) {
+        super(ParsedDocument.FIELDS.SOURCE_TEXT, value, profile.bodyType());
     }
 
 }
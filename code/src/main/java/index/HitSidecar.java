@@ -0,0 +1,338 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import parse.ParsedDocument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Memory-mapped sidecar file of an index, mapping every Lucene document identifier to the identifier, the stance and
+ * the sentence identifiers of the argument, as needed for writing the runs.
+ * <p>
+ * The file holds a header, a table of fixed-width offsets, one for every document plus the end of the table, and a
+ * packed table of records. The record of a document is the length and the UTF-8 bytes of its identifier, the length
+ * and the UTF-8 bytes of its stance and the sentence identifiers encoded as in {@link SentenceIDs}; deleted documents
+ * have an empty record. The file is named after the generation of the commit it describes, so that a searcher never
+ * uses the sidecar of a different commit.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public final class HitSidecar {
+
+    /**
+     * The magic number at the beginning of a sidecar file
+     */
+    private static final int MAGIC = 0x54434853;
+
+    /**
+     * The version of the format of the sidecar files
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The prefix of the names of the sidecar files
+     */
+    private static final String PREFIX = "touche-hits-";
+
+    /**
+     * The extension of the sidecar files
+     */
+    private static final String EXTENSION = ".bin";
+
+    /**
+     * The length of the header: magic number, version, commit generation and number of documents
+     */
+    private static final int HEADER_LENGTH = 4 + 4 + 8 + 4;
+
+    /**
+     * The mapped sidecar file
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The number of documents
+     */
+    private final int maxDoc;
+
+    /**
+     * Creates a new sidecar over a mapped file
+     *
+     * @param buffer the mapped file
+     * @param maxDoc the number of documents
+     */
+    private HitSidecar(final ByteBuffer buffer, final int maxDoc) {
+        this.buffer = buffer;
+        this.maxDoc = maxDoc;
+    }
+
+    /**
+     * Returns the name of the sidecar file of a commit
+     *
+     * @param generation the generation of the commit.
+     * @return the name of the sidecar file.
+     */
+    private static String fileName(final long generation) {
+        return PREFIX + generation + EXTENSION;
+    }
+
+    /**
+     * Writes the sidecar file of the latest commit of an index, reading the doc values of the documents, and deletes
+     * the sidecar files of the older commits.
+     *
+     * @param indexDir the index directory.
+     * @throws IOException if the index cannot be read or the sidecar file cannot be written.
+     */
+    public static void write(final Path indexDir) throws IOException {
+
+        try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(indexDir))) {
+
+            final long generation = reader.getIndexCommit().getGeneration();
+            final int maxDoc = reader.maxDoc();
+            final int[] offsets = new int[maxDoc + 1];
+
+            final Path tmp = indexDir.resolve(fileName(generation) + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                final long tableStart = HEADER_LENGTH + 4L * offsets.length;
+                final ByteBuffer record = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+                out.position(tableStart);
+
+                long position = 0;
+                for (LeafReaderContext leaf : reader.leaves()) {
+
+                    final LeafReader lr = leaf.reader();
+                    final SortedDocValues ids = lr.getSortedDocValues(ParsedDocument.FIELDS.ID);
+                    final SortedDocValues stances = lr.getSortedDocValues(ParsedDocument.FIELDS.STANCE);
+                    final BinaryDocValues sentences = lr.getBinaryDocValues(ParsedDocument.FIELDS.SENTENCES);
+                    final Bits live = lr.getLiveDocs();
+
+                    for (int d = 0; d < lr.maxDoc(); d++) {
+
+                        offsets[leaf.docBase + d] = (int) position;
+
+                        if ((live != null && !live.get(d)) || ids == null || stances == null || sentences == null
+                                || !ids.advanceExact(d) || !stances.advanceExact(d) || !sentences.advanceExact(d)) {
+                            continue;
+                        }
+
+                        final BytesRef id = ids.lookupOrd(ids.ordValue());
+                        final BytesRef stance = stances.lookupOrd(stances.ordValue());
+                        final BytesRef sent = sentences.binaryValue();
+
+                        final int length = 2 + id.length + 2 + stance.length + sent.length;
+                        if (position + length > Integer.MAX_VALUE) {
+                            throw new IOException("The sidecar file exceeds 2 Gbytes.");
+                        }
+
+                        if (record.remaining() < length) {
+                            flush(out, record);
+                        }
+
+                        // a record longer than the buffer is written on its own
+                        final ByteBuffer r = length <= record.capacity() ? record
+                                : ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+                        r.putShort((short) id.length).put(id.bytes, id.offset, id.length);
+                        r.putShort((short) stance.length).put(stance.bytes, stance.offset, stance.length);
+                        r.put(sent.bytes, sent.offset, sent.length);
+                        if (r != record) {
+                            flush(out, r);
+                        }
+
+                        position += length;
+                    }
+                }
+                flush(out, record);
+                offsets[maxDoc] = (int) position;
+
+                final ByteBuffer head = ByteBuffer.allocate((int) tableStart).order(ByteOrder.LITTLE_ENDIAN);
+                head.putInt(MAGIC).putInt(VERSION).putLong(generation).putInt(maxDoc);
+                for (int o : offsets) {
+                    head.putInt(o);
+                }
+                head.flip();
+                out.position(0);
+                while (head.hasRemaining()) {
+                    out.write(head);
+                }
+                out.force(true);
+            }
+
+            Files.move(tmp, indexDir.resolve(fileName(generation)), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            // the sidecars of the older commits are no longer needed
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(indexDir, PREFIX + "*" + EXTENSION)) {
+                for (Path p : ds) {
+                    if (!p.getFileName().toString().equals(fileName(generation))) {
+                        Files.deleteIfExists(p);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the sidecar files of an index directory, e.g. once the index it held has been moved to shards.
+     *
+     * @param indexDir the index directory.
+     * @throws IOException if a sidecar file cannot be deleted.
+     */
+    static void delete(final Path indexDir) throws IOException {
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(indexDir, PREFIX + "*" + EXTENSION)) {
+            for (Path p : ds) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    /**
+     * Writes the content of a buffer to a channel and clears the buffer.
+     *
+     * @param out    the channel.
+     * @param buffer the buffer.
+     * @throws IOException if the buffer cannot be written.
+     */
+    private static void flush(final FileChannel out, final ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps the sidecar file of the commit an index reader has been opened on.
+     *
+     * @param indexDir the index directory.
+     * @param reader   the index reader.
+     * @return the sidecar, {@code null} if there is no valid sidecar file for the commit of the reader.
+     * @throws IOException if the sidecar file cannot be read.
+     */
+    public static HitSidecar open(final Path indexDir, final DirectoryReader reader) throws IOException {
+
+        final long generation = reader.getIndexCommit().getGeneration();
+        final Path file = indexDir.resolve(fileName(generation));
+
+        if (Files.notExists(file)) {
+            return null;
+        }
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            if (in.size() < HEADER_LENGTH || in.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            // the mapping stays valid after the channel is closed
+            final MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            final int maxDoc = buffer.getInt(16);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != generation
+                    || maxDoc != reader.maxDoc() || in.size() < HEADER_LENGTH + 4L * (maxDoc + 1)) {
+                return null;
+            }
+
+            return new HitSidecar(buffer, maxDoc);
+        }
+    }
+
+    /**
+     * Returns the position of the record of a document
+     *
+     * @param doc the document.
+     * @return the absolute position of the record in the file.
+     */
+    private int start(final int doc) {
+        return HEADER_LENGTH + 4 * (maxDoc + 1) + buffer.getInt(HEADER_LENGTH + 4 * doc);
+    }
+
+    /**
+     * Checks whether the sidecar holds the record of a document
+     *
+     * @param doc the document.
+     * @return {@code true} if the sidecar holds the record of the document, {@code false} if the document is deleted.
+     */
+    public boolean contains(final int doc) {
+        return doc >= 0 && doc < maxDoc && start(doc + 1) > start(doc);
+    }
+
+    /**
+     * Returns the identifier of a document
+     *
+     * @param doc the document.
+     * @return the identifier of the document.
+     */
+    public String id(final int doc) {
+        final int p = start(doc);
+        return string(p + 2, buffer.getShort(p) & 0xFFFF);
+    }
+
+    /**
+     * Returns the stance of a document
+     *
+     * @param doc the document.
+     * @return the stance of the document.
+     */
+    public String stance(final int doc) {
+        int p = start(doc);
+        p += 2 + (buffer.getShort(p) & 0xFFFF);
+        return string(p + 2, buffer.getShort(p) & 0xFFFF);
+    }
+
+    /**
+     * Returns the sentence identifiers of a document
+     *
+     * @param doc the document.
+     * @param id  the identifier of the document.
+     * @return the sentence identifiers of the document.
+     */
+    public String[] sentences(final int doc, final String id) {
+        int p = start(doc);
+        p += 2 + (buffer.getShort(p) & 0xFFFF);
+        p += 2 + (buffer.getShort(p) & 0xFFFF);
+        final byte[] bytes = new byte[start(doc + 1) - p];
+        buffer.get(p, bytes);
+        return SentenceIDs.decode(id, new BytesRef(bytes));
+    }
+
+    /**
+     * Decodes an UTF-8 string of the mapped file
+     *
+     * @param position the position of the string.
+     * @param length   the length of the string in bytes.
+     * @return the string.
+     */
+    private String string(final int position, final int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Progress of an indexing run, recorded in the user data of the intermediate commits of the index so that a crashed
+ * run can be resumed.
+ * <p>
+ * The collection is indexed in units, i.e. whole files or record-aligned splits of them (see
+ * {@link parse.ToucheFileSplit}). For every unit the checkpoint records either that it has been completely indexed
+ * or the character position, within the unit, of the first document which may be missing from the index. Documents
+ * are indexed out of order by several threads, so that position is the one of the oldest document that was still
+ * waiting to be indexed: some of the following documents may be indexed again on resume, which is harmless since a
+ * resumed run upserts documents by identifier.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+final class IndexCheckpoint {
+
+    /**
+     * The user data key of the status of the commit
+     */
+    private static final String STATUS = "touche.status";
+
+    /**
+     * The status of an intermediate commit
+     */
+    private static final String CHECKPOINT = "checkpoint";
+
+    /**
+     * The status of the final commit of an indexing run
+     */
+    private static final String COMPLETE = "complete";
+
+    /**
+     * The user data key of the collection directory
+     */
+    private static final String DOCS_DIR = "touche.docsDir";
+
+    /**
+     * The user data key of the open mode requested for the run
+     */
+    private static final String OPEN_MODE = "touche.openMode";
+
+    /**
+     * The user data key of the generation of the run
+     */
+    private static final String GENERATION = "touche.generation";
+
+    /**
+     * The user data key prefix of the units
+     */
+    private static final String UNIT = "touche.unit.";
+
+    /**
+     * The position recorded for a completely indexed unit
+     */
+    private static final long DONE = -1;
+
+    /**
+     * The collection directory
+     */
+    private final String docsDir;
+
+    /**
+     * The open mode requested for the run
+     */
+    private final IndexWriterConfig.OpenMode openMode;
+
+    /**
+     * The generation of the run
+     */
+    private final long generation;
+
+    /**
+     * The positions recorded by the checkpoint the run resumes from, by unit key
+     */
+    private final Map<String, Long> resumed;
+
+    /**
+     * The units of the run, by unit key
+     */
+    private final Map<String, Unit> units = new TreeMap<>();
+
+    /**
+     * Creates a new checkpoint.
+     *
+     * @param docsDir    the collection directory.
+     * @param openMode   the open mode requested for the run.
+     * @param generation the generation of the run.
+     * @param resumed    the positions recorded by the checkpoint the run resumes from, by unit key.
+     */
+    IndexCheckpoint(final String docsDir, final IndexWriterConfig.OpenMode openMode, final long generation,
+                    final Map<String, Long> resumed) {
+        this.docsDir = docsDir;
+        this.openMode = openMode;
+        this.generation = generation;
+        this.resumed = resumed;
+    }
+
+    /**
+     * Reads the checkpoint left by an interrupted indexing run.
+     *
+     * @param dir the index directory.
+     * @return the checkpoint of the interrupted run, {@code null} if the last run completed or there is no index.
+     * @throws IOException if the last commit cannot be read.
+     */
+    static IndexCheckpoint read(final Directory dir) throws IOException {
+
+        if (!DirectoryReader.indexExists(dir)) {
+            return null;
+        }
+
+        final Map<String, String> data = SegmentInfos.readLatestCommit(dir).getUserData();
+        if (!CHECKPOINT.equals(data.get(STATUS))) {
+            return null;
+        }
+
+        final Map<String, Long> resumed = new HashMap<>();
+        for (Map.Entry<String, String> e : data.entrySet()) {
+            if (e.getKey().startsWith(UNIT)) {
+                resumed.put(e.getKey().substring(UNIT.length()), Long.parseLong(e.getValue()));
+            }
+        }
+
+        return new IndexCheckpoint(data.get(DOCS_DIR), IndexWriterConfig.OpenMode.valueOf(data.get(OPEN_MODE)),
+                Long.parseLong(data.get(GENERATION)), resumed);
+    }
+
+    /**
+     * Returns the generation recorded by the last commit of an index, either by a checkpoint or by the final commit of
+     * a run.
+     *
+     * @param dir the index directory.
+     * @return the generation of the last commit, {@code 0} if there is no index or its last commit records none.
+     * @throws IOException if the last commit cannot be read.
+     */
+    static long generation(final Directory dir) throws IOException {
+
+        if (!DirectoryReader.indexExists(dir)) {
+            return 0;
+        }
+
+        final String generation = SegmentInfos.readLatestCommit(dir).getUserData().get(GENERATION);
+        return generation == null ? 0 : Long.parseLong(generation);
+    }
+
+    /**
+     * Returns the user data marking the final commit of an indexing run.
+     *
+     * @param generation the generation of the run.
+     * @return the user data of the final commit.
+     */
+    static Map<String, String> complete(final long generation) {
+        return Map.of(STATUS, COMPLETE, GENERATION, Long.toString(generation));
+    }
+
+    /**
+     * Registers a unit of the run.
+     *
+     * @param key the key of the unit.
+     * @return the unit, or {@code null} if the checkpoint the run resumes from records it as completely indexed.
+     */
+    synchronized Unit unit(final String key) {
+
+        final long from = resumed.getOrDefault(key, 0L);
+        final Unit unit = new Unit(from == DONE ? 0 : from);
+        if (from == DONE) {
+            unit.finish();
+        }
+        units.put(key, unit);
+
+        return from == DONE ? null : unit;
+    }
+
+    /**
+     * Returns the user data recording the current progress of the run, to be stored in an intermediate commit.
+     *
+     * @return the user data of the intermediate commit.
+     */
+    synchronized Map<String, String> snapshot() {
+
+        final Map<String, String> data = new HashMap<>();
+        data.put(STATUS, CHECKPOINT);
+        data.put(DOCS_DIR, docsDir);
+        data.put(OPEN_MODE, openMode.name());
+        data.put(GENERATION, Long.toString(generation));
+
+        for (Map.Entry<String, Unit> e : units.entrySet()) {
+            data.put(UNIT + e.getKey(), Long.toString(e.getValue().watermark()));
+        }
+
+        return data;
+    }
+
+    /**
+     * Returns the number of units recorded as completely indexed by the checkpoint the run resumes from
+     *
+     * @return the number of units already indexed
+     */
+    long resumedUnits() {
+        return resumed.values().stream().filter(p -> p == DONE).count();
+    }
+
+    /**
+     * Returns the collection directory
+     *
+     * @return the collection directory
+     */
+    String getDocsDir() {
+        return docsDir;
+    }
+
+    /**
+     * Returns the open mode requested for the run
+     *
+     * @return the open mode requested for the run
+     */
+    IndexWriterConfig.OpenMode getOpenMode() {
+        return openMode;
+    }
+
+    /**
+     * Returns the generation of the run
+     *
+     * @return the generation of the run
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * The progress of a file, or of a split of it
+     */
+    static final class Unit {
+
+        /**
+         * The position where the indexing of the unit starts
+         */
+        private final long from;
+
+        /**
+         * The difference between the positions in the unit and the ones reported by the parser
+         */
+        private long base;
+
+        /**
+         * The positions of the documents parsed but not yet indexed
+         */
+        private final TreeSet<Long> pending = new TreeSet<>();
+
+        /**
+         * The number of documents parsed but not yet indexed
+         */
+        private int inFlight;
+
+        /**
+         * The position of the last indexed document
+         */
+        private long last;
+
+        /**
+         * Whether all the documents of the unit have been parsed
+         */
+        private boolean parsed;
+
+        /**
+         * Whether the positions reported by the parser are unknown
+         */
+        private boolean unknown;
+
+        /**
+         * Creates a new unit
+         *
+         * @param from the position where the indexing of the unit starts
+         */
+        private Unit(final long from) {
+            this.from = from;
+            this.last = from;
+        }
+
+        /**
+         * Returns the position where the indexing of the unit starts
+         *
+         * @return the position where the indexing of the unit starts
+         */
+        long start() {
+            return from;
+        }
+
+        /**
+         * Skips the part of the unit already indexed by the interrupted run. The header line is kept, so that the
+         * returned reader can still be parsed as a whole collection file.
+         *
+         * @param in the reader to the unit.
+         * @return the reader to the part of the unit still to be indexed.
+         * @throws IOException if the unit cannot be read.
+         */
+        Reader skip(final Reader in) throws IOException {
+
+            if (from == 0) {
+                return in;
+            }
+
+            final StringBuilder header = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                header.append((char) c);
+                if (c == '\n') {
+                    break;
+                }
+            }
+
+            long n = from - header.length();
+            while (n > 0) {
+                final long skipped = in.skip(n);
+                if (skipped <= 0) {
+                    throw new IOException(String.format("Unable to resume indexing at position %d.", from));
+                }
+                n -= skipped;
+            }
+
+            base = from - header.length();
+
+            final PushbackReader reader = new PushbackReader(in, Math.max(1, header.length()));
+            reader.unread(header.toString().toCharArray());
+            return reader;
+        }
+
+        /**
+         * Records that a document has been parsed and is waiting to be indexed.
+         *
+         * @param position the position of the document reported by the parser, -1 if unknown.
+         * @return the position of the document in the unit.
+         */
+        synchronized long parsed(final long position) {
+            inFlight++;
+            if (position < 0) {
+                unknown = true;
+                return position;
+            }
+            pending.add(base + position);
+            return base + position;
+        }
+
+        /**
+         * Records that a document has been indexed.
+         *
+         * @param position the position of the document in the unit.
+         */
+        synchronized void indexed(final long position) {
+            inFlight--;
+            if (position >= 0) {
+                pending.remove(position);
+                last = Math.max(last, position);
+            }
+        }
+
+        /**
+         * Records that all the documents of the unit have been parsed.
+         */
+        synchronized void finish() {
+            parsed = true;
+        }
+
+        /**
+         * Returns the position of the first document of the unit which may not be indexed yet.
+         *
+         * @return the position of the first document which may not be indexed yet, {@link #DONE} if the unit has
+         * been completely indexed.
+         */
+        private synchronized long watermark() {
+            if (parsed && inFlight == 0) {
+                return DONE;
+            }
+            if (unknown) {
+                return from;
+            }
+            return pending.isEmpty() ? last : pending.first();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Manifest of the collection files indexed in an index directory.
+ * <p>
+ * For every file it records size, last modification time and SHA-256 hash, so that files that did not change since
+ * the last indexing can be skipped. It also records the indexing generation, i.e. the number of indexing runs that
+ * wrote the index, which is used for telling apart the documents added by the current run from the older ones.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public class IndexManifest {
+
+    /**
+     * The name of the manifest file within the index directory
+     */
+    public static final String FILE_NAME = "touche-manifest.json";
+
+    /**
+     * The object mapper used for reading and writing the manifest
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The generation of the last indexing run
+     */
+    private long generation;
+
+    /**
+     * The description of the indexed files, by file key
+     */
+    private final Map<String, Stamp> files = new TreeMap<>();
+
+    /**
+     * Reads the manifest of an index directory.
+     *
+     * @param indexDir the index directory.
+     * @return the manifest of the index directory, an empty manifest if there is none.
+     * @throws IOException if the manifest cannot be read.
+     */
+    public static IndexManifest read(final Path indexDir) throws IOException {
+
+        final IndexManifest manifest = new IndexManifest();
+        final Path file = indexDir.resolve(FILE_NAME);
+
+        if (Files.notExists(file)) {
+            return manifest;
+        }
+
+        final JsonNode root = MAPPER.readTree(file.toFile());
+        manifest.generation = root.path("generation").asLong();
+
+        final Iterator<Map.Entry<String, JsonNode>> it = root.path("files").fields();
+        while (it.hasNext()) {
+            final Map.Entry<String, JsonNode> e = it.next();
+            manifest.files.put(e.getKey(), new Stamp(null, e.getValue().path("size").asLong(),
+                    e.getValue().path("lastModified").asLong(), e.getValue().path("sha256").asText()));
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest in an index directory, replacing the previous one atomically.
+     *
+     * @param indexDir the index directory.
+     * @throws IOException if the manifest cannot be written.
+     */
+    public void write(final Path indexDir) throws IOException {
+
+        final ObjectNode root = MAPPER.createObjectNode();
+        root.put("generation", generation);
+
+        final ObjectNode fs = root.putObject("files");
+        for (Map.Entry<String, Stamp> e : files.entrySet()) {
+            fs.putObject(e.getKey())
+                    .put("size", e.getValue().size)
+                    .put("lastModified", e.getValue().lastModified)
+                    .put("sha256", e.getValue().sha256);
+        }
+
+        final Path tmp = indexDir.resolve(FILE_NAME + ".tmp");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), root);
+        Files.move(tmp, indexDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Checks whether a file changed since it was indexed. The hash of the file is computed only if it was never
+     * indexed or its size or its modification time changed; if the content did not change the new modification time
+     * is recorded.
+     * <p>
+     * The stamp of a changed file is taken before the file is parsed and has to be recorded with
+     * {@link #put(String, Stamp)} once the file has been indexed: if the file is written while it is being indexed,
+     * the stamp does not match the new content and the file is indexed again by the next run.
+     *
+     * @param key  the key of the file.
+     * @param file the file.
+     * @return the stamp of the file if it was never indexed or its content changed, {@code null} otherwise.
+     * @throws IOException if the file cannot be read.
+     */
+    public Stamp changed(final String key, final Path file) throws IOException {
+
+        //size and modification time are read before hashing, so that a write during the hashing is detected later
+        final long size = Files.size(file);
+        final long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        final Stamp old = files.get(key);
+        if (old != null && old.size == size && old.lastModified == lastModified) {
+            return null;
+        }
+
+        final String sha256 = sha256(file);
+        if (old != null && old.size == size && old.sha256.equals(sha256)) {
+            files.put(key, new Stamp(null, size, lastModified, old.sha256));
+            return null;
+        }
+
+        return new Stamp(file, size, lastModified, sha256);
+    }
+
+    /**
+     * Records the state of an indexed file, as it was when it was found changed.
+     *
+     * @param key   the key of the file.
+     * @param stamp the stamp of the file returned by {@link #changed(String, Path)}.
+     */
+    public void put(final String key, final Stamp stamp) {
+        files.put(key, stamp);
+    }
+
+    /**
+     * Removes a file from the manifest.
+     *
+     * @param key the key of the file.
+     */
+    public void remove(final String key) {
+        files.remove(key);
+    }
+
+    /**
+     * Returns the keys of the files in the manifest
+     *
+     * @return the keys of the files in the manifest
+     */
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(files.keySet());
+    }
+
+    /**
+     * Returns the generation of the last indexing run
+     *
+     * @return the generation of the last indexing run
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Sets the generation of the last indexing run
+     *
+     * @param generation the generation of the last indexing run
+     */
+    public void setGeneration(final long generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * Computes the SHA-256 hash of a file.
+     *
+     * @param file the file.
+     * @return the hexadecimal SHA-256 hash of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    static String sha256(final Path file) throws IOException {
+
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+
+        final byte[] buffer = new byte[1024 * 1024];
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        }
+
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * The description of an indexed file
+     */
+    public static final class Stamp {
+
+        /**
+         * The file, {@code null} for the files read from the manifest
+         */
+        private final Path file;
+
+        /**
+         * The size of the file in bytes
+         */
+        private final long size;
+
+        /**
+         * The last modification time of the file in milliseconds
+         */
+        private final long lastModified;
+
+        /**
+         * The SHA-256 hash of the file
+         */
+        private final String sha256;
+
+        /**
+         * Creates a new description of an indexed file
+         *
+         * @param file         the file, {@code null} for the files read from the manifest
+         * @param size         the size of the file in bytes
+         * @param lastModified the last modification time of the file in milliseconds
+         * @param sha256       the SHA-256 hash of the file
+         */
+        private Stamp(final Path file, final long size, final long lastModified, final String sha256) {
+            this.file = file;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.sha256 = sha256;
+        }
+
+        /**
+         * Returns the file
+         *
+         * @return the file, {@code null} for the files read from the manifest
+         */
+        public Path getFile() {
+            return file;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.PositionIncrementAttribute;
+import org.apache.lucene.search.similarities.Similarity;
+import parse.ParsedDocument;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * Build metadata recorded in the user data of the final commit of an index: the analyzer, the similarity and the
+ * schema profile the index was built with.
+ * <p>
+ * The analyzer is recorded by a fingerprint of the tokens it produces for a probe text, so that two analyzers with
+ * the same chain of filters (e.g. {@code ToucheAnalyzer} and {@code ToucheAnalyzerQueries}) are compatible, while the
+ * same analyzer class with a different stoplist or stemmer is not.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public final class IndexMetadata {
+
+    /**
+     * The user data key of the fingerprint of the analyzer
+     */
+    public static final String ANALYZER = "touche.analyzer";
+
+    /**
+     * The user data key of the class of the analyzer
+     */
+    public static final String ANALYZER_CLASS = "touche.analyzerClass";
+
+    /**
+     * The user data key of the similarity
+     */
+    public static final String SIMILARITY = "touche.similarity";
+
+    /**
+     * The user data key of the schema profile
+     */
+    public static final String SCHEMA_PROFILE = "touche.schemaProfile";
+
+    /**
+     * The text analyzed for computing the fingerprint of an analyzer: it exercises case, possessives, stop words,
+     * inflections, numbers, URLs and token lengths
+     */
+    private static final String PROBE = "The Government's arguments against school uniforms weren't convincing: "
+            + "students, teachers and parents ARE running studies on it since 2019 (e.g. www.example.com). "
+            + "Generously, it's a well-known, internationally-recognized problem of the utmost importance!";
+
+    /**
+     * The fields whose analysis is fingerprinted
+     */
+    private static final String[] FIELDS = {ParsedDocument.FIELDS.SOURCE_TEXT, ParsedDocument.FIELDS.CONCLUSION,
+            ParsedDocument.FIELDS.DISCUSSION_TITLE, ParsedDocument.FIELDS.SOURCE_TITLE};
+
+    /**
+     * This class cannot be instantiated
+     */
+    private IndexMetadata() {
+        throw new AssertionError("IndexMetadata cannot be instantiated.");
+    }
+
+    /**
+     * Returns the build metadata of an index.
+     *
+     * @param analyzer   the analyzer of the index.
+     * @param similarity the similarity of the index.
+     * @param profile    the schema profile of the index.
+     * @return the user data recording the build metadata.
+     */
+    public static Map<String, String> of(final Analyzer analyzer, final Similarity similarity,
+                                         final SchemaProfile profile) {
+        return Map.of(ANALYZER, fingerprint(analyzer), ANALYZER_CLASS, analyzer.getClass().getName(),
+                SIMILARITY, similarity.toString(), SCHEMA_PROFILE, profile.toString());
+    }
+
+    /**
+     * Checks that an index can be searched with the given analyzer and similarity. An index without build metadata,
+     * e.g. one built before the metadata were recorded, is always accepted.
+     *
+     * @param data       the user data of the commit of the index.
+     * @param analyzer   the analyzer used for searching.
+     * @param similarity the similarity used for searching.
+     * @param indexDir   the description of the index, for the messages.
+     * @throws IllegalArgumentException if the index has been built with an analyzer which analyzes text differently.
+     */
+    public static void check(final Map<String, String> data, final Analyzer analyzer, final Similarity similarity,
+                             final String indexDir) {
+
+        final String fingerprint = data.get(ANALYZER);
+        if (fingerprint != null && !fingerprint.equals(fingerprint(analyzer))) {
+            throw new IllegalArgumentException(String.format(
+                    "The index in %s has been built with analyzer %s, which analyzes text differently from %s.",
+                    indexDir, data.get(ANALYZER_CLASS), analyzer.getClass().getName()));
+        }
+
+        //the norms are encoded in the same way by every similarity: a different one only changes the scores
+        final String sim = data.get(SIMILARITY);
+        if (sim != null && !sim.equals(similarity.toString())) {
+            System.out.printf("The index in %s has been built with similarity %s and it is searched with %s.%n",
+                    indexDir, sim, similarity);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of an analyzer, i.e. a hash of the tokens it produces for the probe text.
+     *
+     * @param analyzer the analyzer.
+     * @return the hexadecimal fingerprint of the analyzer.
+     */
+    public static String fingerprint(final Analyzer analyzer) {
+
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+
+        for (String field : FIELDS) {
+            md.update(field.getBytes(StandardCharsets.UTF_8));
+
+            try (TokenStream ts = analyzer.tokenStream(field, PROBE)) {
+                final CharTermAttribute term = ts.addAttribute(CharTermAttribute.class);
+                final PositionIncrementAttribute increment = ts.addAttribute(PositionIncrementAttribute.class);
+
+                ts.reset();
+                while (ts.incrementToken()) {
+                    md.update((byte) increment.getPositionIncrement());
+                    md.update(term.toString().getBytes(StandardCharsets.UTF_8));
+                    md.update((byte) 0);
+                }
+                ts.end();
+            } catch (IOException e) {
+                //never thrown while analyzing a string
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        return HexFormat.of().formatHex(md.digest(), 0, 16);
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Versioned builds of an index, for rebuilding an index while it is being searched.
+ * <p>
+ * The index directory contains one directory for every build of the index, {@code build-1}, {@code build-2}, ...,
+ * and a {@code CURRENT} file naming the build to be searched, which is replaced atomically once a new build is
+ * complete. Searchers take a lease on the commit of the build they read (see {@link #acquire()}): a lease is a locked
+ * file, so that the lease of a crashed searcher expires with its process. The builds other than the current one, and
+ * the commits of the current build other than the latest one, are deleted as soon as no lease holds them.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public final class IndexVersions {
+
+    /**
+     * The name of the file naming the current build
+     */
+    public static final String CURRENT = "CURRENT";
+
+    /**
+     * The prefix of the names of the build directories
+     */
+    private static final String BUILD = "build-";
+
+    /**
+     * The name of the directory containing the leases
+     */
+    private static final String LEASES = "leases";
+
+    /**
+     * The extension of the lease files
+     */
+    private static final String LEASE_EXTENSION = ".lease";
+
+    /**
+     * The attempts at leasing the current build before giving up
+     */
+    private static final int LEASE_ATTEMPTS = 5;
+
+    /**
+     * The lease files locked by this process. They are never opened again for checking whether they are held: closing
+     * another channel on a file releases the locks of the whole process on it.
+     */
+    private static final Set<Path> HELD = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The versioned index directory
+     */
+    private final Path root;
+
+    /**
+     * Creates a new handle of a versioned index directory.
+     *
+     * @param root the versioned index directory.
+     * @throws NullPointerException if {@code root} is {@code null}.
+     */
+    public IndexVersions(final Path root) {
+        if (root == null) {
+            throw new NullPointerException("Index directory cannot be null.");
+        }
+        this.root = root;
+    }
+
+    /**
+     * Checks whether an index directory contains versioned builds.
+     *
+     * @param root the index directory.
+     * @return {@code true} if the directory contains versioned builds, {@code false} otherwise.
+     */
+    public static boolean isVersioned(final Path root) {
+        return Files.exists(root.resolve(CURRENT));
+    }
+
+    /**
+     * Returns the name of the current build.
+     *
+     * @return the name of the current build, {@code null} if no build has been published yet.
+     * @throws IOException if the current build cannot be read.
+     */
+    public String current() throws IOException {
+        final Path file = root.resolve(CURRENT);
+        return Files.notExists(file) ? null : Files.readString(file, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Returns the directory of a build
+     *
+     * @param build the name of the build.
+     * @return the directory of the build.
+     */
+    public Path directory(final String build) {
+        return root.resolve(build);
+    }
+
+    /**
+     * Returns the directory for a new build. A build newer than the current one is the build of an interrupted run
+     * and it is returned again, so that the run can be resumed or overwritten.
+     *
+     * @return the directory for the new build.
+     * @throws IOException if the directory cannot be created.
+     */
+    public Path newBuild() throws IOException {
+        final int last = lastBuild();
+        final int current = number(current());
+        final Path dir = root.resolve(BUILD + (last > current ? last : last + 1));
+        Files.createDirectories(dir);
+        return dir;
+    }
+
+    /**
+     * Makes a build the current one, atomically.
+     *
+     * @param build the directory of the build.
+     * @throws IOException if the current build cannot be written.
+     */
+    public void publish(final Path build) throws IOException {
+        final Path tmp = root.resolve(CURRENT + ".tmp");
+        Files.writeString(tmp, build.getFileName().toString(), StandardCharsets.UTF_8);
+        Files.move(tmp, root.resolve(CURRENT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Leases the latest commit of the current build, so that it is not deleted while it is searched.
+     *
+     * @return the lease, to be closed once the commit is no longer searched.
+     * @throws IOException if there is no current build or it cannot be leased.
+     */
+    public Lease acquire() throws IOException {
+
+        IOException failure = null;
+        for (int attempt = 0; attempt < LEASE_ATTEMPTS; attempt++) {
+
+            final String build = current();
+            if (build == null) {
+                throw new IOException(String.format("No index build has been published in %s.", root.toAbsolutePath()));
+            }
+
+            //the build may be replaced, and deleted by another process, at any time before the lease is taken
+            Directory dir = null;
+            Lease lease = null;
+            try {
+                //opening the directory would create it again if it has just been deleted
+                final Path path = directory(build);
+                if (!Files.isDirectory(path)) {
+                    throw new NoSuchFileException(path.toString());
+                }
+                dir = FSDirectory.open(path);
+                final long generation = SegmentInfos.readLatestCommit(dir).getGeneration();
+                lease = lease(build, generation, dir);
+
+                if (build.equals(current()) && lease.commit() != null) {
+                    return lease;
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            //the lease closes its directory
+            IOUtils.closeWhileHandlingException(lease != null ? lease : dir);
+        }
+
+        throw new IOException(String.format("Unable to lease the current index build in %s.", root.toAbsolutePath()),
+                failure);
+    }
+
+    /**
+     * Takes a lease on a commit of a build.
+     *
+     * @param build      the name of the build.
+     * @param generation the generation of the commit.
+     * @param dir        the directory of the build.
+     * @return the lease.
+     * @throws IOException if the lease file cannot be created or locked.
+     */
+    private Lease lease(final String build, final long generation, final Directory dir) throws IOException {
+
+        final Path leases = root.resolve(LEASES);
+        Files.createDirectories(leases);
+
+        final Path file = leases.resolve(String.format("%s@%d@%s%s", build, generation, UUID.randomUUID(),
+                LEASE_EXTENSION)).toAbsolutePath().normalize();
+
+        //registered before the file exists, so that no other thread of this process ever probes it
+        HELD.add(file);
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return new Lease(this, file, channel, channel.lock(), dir, generation);
+        } catch (IOException | RuntimeException e) {
+            try {
+                IOUtils.close(channel);
+                Files.deleteIfExists(file);
+            } finally {
+                HELD.remove(file);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the commits of a build held by a lease. The expired leases, i.e. the ones of crashed searchers, are
+     * deleted.
+     *
+     * @param build the name of the build.
+     * @return the generations of the leased commits.
+     * @throws IOException if the leases cannot be read.
+     */
+    public Set<Long> leased(final String build) throws IOException {
+
+        final Set<Long> generations = new HashSet<>();
+        final Path leases = root.resolve(LEASES);
+        if (Files.notExists(leases)) {
+            return generations;
+        }
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(leases, build + "@*" + LEASE_EXTENSION)) {
+            for (Path p : ds) {
+                if (isHeld(p)) {
+                    generations.add(Long.parseLong(p.getFileName().toString().split("@")[1]));
+                } else {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+
+        return generations;
+    }
+
+    /**
+     * Checks whether a lease file is locked by a live searcher. The leases of this process are held until they are
+     * closed; the ones of the other processes are probed with a lock attempt.
+     *
+     * @param file the lease file.
+     * @return {@code true} if the lease is held, {@code false} if it expired.
+     * @throws IOException if the lease file cannot be read.
+     */
+    private static boolean isHeld(final Path file) throws IOException {
+        if (HELD.contains(file.toAbsolutePath().normalize())) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            final FileLock lock = channel.tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            //being probed by another thread of this process
+            return true;
+        } catch (NoSuchFileException e) {
+            //released meanwhile
+            return false;
+        }
+    }
+
+    /**
+     * Deletes the builds older than the current one which are not held by any lease.
+     *
+     * @throws IOException if a build cannot be deleted.
+     */
+    public void collect() throws IOException {
+
+        final int current = number(current());
+
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root, BUILD + "*")) {
+            for (Path p : ds) {
+                final String build = p.getFileName().toString();
+                if (number(build) < current && leased(build).isEmpty()) {
+                    IOUtils.rm(p);
+                    System.out.printf("Index build %s deleted.%n", build);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of the last build, published or not
+     *
+     * @return the number of the last build, 0 if there is none.
+     * @throws IOException if the index directory cannot be read.
+     */
+    private int lastBuild() throws IOException {
+        int last = 0;
+        if (Files.exists(root)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(root, BUILD + "*")) {
+                for (Path p : ds) {
+                    last = Math.max(last, number(p.getFileName().toString()));
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Returns the number of a build
+     *
+     * @param build the name of the build, possibly {@code null}.
+     * @return the number of the build, 0 if it is {@code null} or not a build name.
+     */
+    private static int number(final String build) {
+        if (build == null || !build.startsWith(BUILD)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(build.substring(BUILD.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * A lease on a commit of a build, which is not deleted until the lease is closed
+     */
+    public static final class Lease implements Closeable {
+
+        /**
+         * The builds of the leased index
+         */
+        private final IndexVersions versions;
+
+        /**
+         * The lease file
+         */
+        private final Path file;
+
+        /**
+         * The channel of the lease file
+         */
+        private final FileChannel channel;
+
+        /**
+         * The lock of the lease file
+         */
+        private final FileLock lock;
+
+        /**
+         * The directory of the build
+         */
+        private final Directory dir;
+
+        /**
+         * The generation of the leased commit
+         */
+        private final long generation;
+
+        /**
+         * Creates a new lease
+         *
+         * @param versions   the builds of the leased index
+         * @param file       the lease file
+         * @param channel    the channel of the lease file
+         * @param lock       the lock of the lease file
+         * @param dir        the directory of the build
+         * @param generation the generation of the leased commit
+         */
+        private Lease(final IndexVersions versions, final Path file, final FileChannel channel, final FileLock lock, final Directory dir,
+                      final long generation) {
+            this.versions = versions;
+            this.file = file;
+            this.channel = channel;
+            this.lock = lock;
+            this.dir = dir;
+            this.generation = generation;
+        }
+
+        /**
+         * Returns the leased commit
+         *
+         * @return the leased commit, {@code null} if it does not exist anymore.
+         * @throws IOException if the commits of the build cannot be listed.
+         */
+        private IndexCommit commit() throws IOException {
+            for (IndexCommit c : DirectoryReader.listCommits(dir)) {
+                if (c.getGeneration() == generation) {
+                    return c;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Opens a reader on the leased commit.
+         *
+         * @return the reader of the leased commit.
+         * @throws IOException if the commit cannot be read.
+         */
+        public DirectoryReader open() throws IOException {
+            final IndexCommit commit = commit();
+            if (commit == null) {
+                throw new IOException(String.format("The leased commit %d does not exist anymore.", generation));
+            }
+            return DirectoryReader.open(commit);
+        }
+
+        /**
+         * Returns the directory of the leased build
+         *
+         * @return the directory of the leased build
+         */
+        public Path getPath() {
+            return ((FSDirectory) dir).getDirectory();
+        }
+
+        /**
+         * Returns the builds of the leased index, e.g. for deleting the builds no longer searched once the lease has
+         * been closed
+         *
+         * @return the builds of the leased index
+         */
+        public IndexVersions getVersions() {
+            return versions;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lock.release();
+                channel.close();
+            } finally {
+                try {
+                    Files.deleteIfExists(file);
+                } finally {
+                    HELD.remove(file);
+                    dir.close();
+                }
+            }
+        }
+    }
+}
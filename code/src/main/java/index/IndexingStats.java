@@ -0,0 +1,404 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.AnalyzerWrapper;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeScheduler;
+import parse.DocumentParser;
+import parse.ToucheCacheParser;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-stage counters and timers of an indexing run, telling whether the indexing is bound by the parsing, by the
+ * analysis or by the I/O.
+ * <p>
+ * The timers of the stages run in the parsing and indexing threads, so their times are summed over the threads. The
+ * stages are nested: reading the collection files happens while decoding the CSV records and analyzing happens while
+ * adding the documents to the index; the time of the outer stages is reported without the time of the inner ones.
+ * The segments flushed because the RAM buffer is full are written while adding documents, so they are part of the
+ * {@link Stage#INDEX} stage, while the commits and the merges are part of the {@link Stage#FLUSH_MERGE} stage. At the
+ * end of the run a report is written as JSON in the index directory (see {@link #write(Path, long, long, long, long)}).
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public final class IndexingStats {
+
+    /**
+     * The name of the report file, in the index directory
+     */
+    public static final String FILE_NAME = "touche-indexing-stats.json";
+
+    /**
+     * The mapper used for writing the report
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The stages of the indexing
+     */
+    public enum Stage {
+
+        /**
+         * Reading (and decompressing) the collection files; counts the characters read
+         */
+        READ("fileRead"),
+
+        /**
+         * Decoding the CSV records, without reading the files; counts the records
+         */
+        CSV("csvDecode"),
+
+        /**
+         * Decoding the JSON fields of the CSV records; counts the records
+         */
+        JSON("jsonDecode"),
+
+        /**
+         * Decoding the records of the corpus cache; counts the records
+         */
+        CACHE("cacheDecode"),
+
+        /**
+         * Waiting for space in the queue of the parsed documents, i.e. the indexing threads are behind
+         */
+        PARSER_BLOCKED("parserBlocked"),
+
+        /**
+         * Waiting for parsed documents, i.e. the parsing threads are behind
+         */
+        INDEXER_IDLE("indexerIdle"),
+
+        /**
+         * Creating the Lucene documents, including the sentiment and readability scores; counts the documents
+         */
+        DOCUMENT("document"),
+
+        /**
+         * Analyzing the text fields; counts the tokens
+         */
+        ANALYSIS("analysis"),
+
+        /**
+         * Adding the documents to the index and its variants, without analyzing them; counts the documents
+         */
+        INDEX("addDocument"),
+
+        /**
+         * Committing, force-merging and merging the index in the background; counts the operations
+         */
+        FLUSH_MERGE("flushMerge");
+
+        /**
+         * The name of the stage in the report
+         */
+        private final String name;
+
+        /**
+         * Creates a new stage
+         *
+         * @param name the name of the stage in the report
+         */
+        Stage(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The time in nanoseconds of every stage, including the nested stages
+     */
+    private final LongAdder[] nanos = new LongAdder[Stage.values().length];
+
+    /**
+     * The counts of every stage
+     */
+    private final LongAdder[] counts = new LongAdder[Stage.values().length];
+
+    /**
+     * Creates new statistics, all set to zero.
+     */
+    public IndexingStats() {
+        for (int s = 0; s < nanos.length; s++) {
+            nanos[s] = new LongAdder();
+            counts[s] = new LongAdder();
+        }
+    }
+
+    /**
+     * Sets all the statistics to zero, at the beginning of a run.
+     */
+    public void reset() {
+        for (int s = 0; s < nanos.length; s++) {
+            nanos[s].reset();
+            counts[s].reset();
+        }
+    }
+
+    /**
+     * Records the time spent in a stage.
+     *
+     * @param stage the stage.
+     * @param nanos the time in nanoseconds.
+     * @param count the count of the stage, e.g. the number of documents.
+     */
+    public void add(final Stage stage, final long nanos, final long count) {
+        this.nanos[stage.ordinal()].add(nanos);
+        this.counts[stage.ordinal()].add(count);
+    }
+
+    /**
+     * Records the decoding times of a parser which read all its documents.
+     *
+     * @param dp   the parser.
+     * @param docs the number of documents parsed.
+     */
+    void parsed(final DocumentParser dp, final long docs) {
+        if (dp instanceof ToucheCacheParser) {
+            add(Stage.CACHE, dp.getRecordNanos(), docs);
+        } else {
+            add(Stage.CSV, dp.getRecordNanos(), docs);
+            add(Stage.JSON, dp.getFieldNanos(), docs);
+        }
+    }
+
+    /**
+     * Returns the time spent in a stage, without the time of its nested stage.
+     *
+     * @param stage the stage.
+     * @return the time in nanoseconds.
+     */
+    public long getNanos(final Stage stage) {
+        long n = nanos[stage.ordinal()].sum();
+        if (stage == Stage.CSV) {
+            n -= nanos[Stage.READ.ordinal()].sum();
+        } else if (stage == Stage.INDEX) {
+            n -= nanos[Stage.ANALYSIS.ordinal()].sum();
+        }
+        return Math.max(n, 0);
+    }
+
+    /**
+     * Returns the count of a stage.
+     *
+     * @param stage the stage.
+     * @return the count of the stage.
+     */
+    public long getCount(final Stage stage) {
+        return counts[stage.ordinal()].sum();
+    }
+
+    /**
+     * Wraps the reader of a collection file, for timing its reads.
+     *
+     * @param in the reader.
+     * @return the timed reader.
+     */
+    Reader timed(final Reader in) {
+        return new FilterReader(in) {
+
+            @Override
+            public int read() throws IOException {
+                final long t = System.nanoTime();
+                final int c = super.read();
+                add(Stage.READ, System.nanoTime() - t, c == -1 ? 0 : 1);
+                return c;
+            }
+
+            @Override
+            public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                final long t = System.nanoTime();
+                final int n = super.read(cbuf, off, len);
+                add(Stage.READ, System.nanoTime() - t, Math.max(n, 0));
+                return n;
+            }
+        };
+    }
+
+    /**
+     * Wraps an analyzer, for timing the analysis.
+     *
+     * @param analyzer the analyzer.
+     * @return the timed analyzer.
+     */
+    Analyzer timed(final Analyzer analyzer) {
+        return new AnalyzerWrapper(analyzer.getReuseStrategy()) {
+
+            @Override
+            protected Analyzer getWrappedAnalyzer(final String fieldName) {
+                return analyzer;
+            }
+
+            @Override
+            protected TokenStreamComponents wrapComponents(final String fieldName,
+                                                           final TokenStreamComponents components) {
+                return new TokenStreamComponents(components.getSource(), new TimedFilter(components.getTokenStream()));
+            }
+        };
+    }
+
+    /**
+     * Creates the merge scheduler of an index writer, for timing the background merges.
+     *
+     * @return the timed merge scheduler.
+     */
+    MergeScheduler mergeScheduler() {
+        return new ConcurrentMergeScheduler() {
+            @Override
+            protected void doMerge(final MergeSource mergeSource, final MergePolicy.OneMerge merge) throws IOException {
+                final long t = System.nanoTime();
+                try {
+                    super.doMerge(mergeSource, merge);
+                } finally {
+                    add(Stage.FLUSH_MERGE, System.nanoTime() - t, 1);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the throughput of a run so far, for the progress messages.
+     *
+     * @param docs          the number of documents indexed.
+     * @param elapsedMillis the time elapsed since the beginning of the run.
+     * @return the throughput, in documents and in Mbytes of text read per second.
+     */
+    String throughput(final long docs, final long elapsedMillis) {
+        final double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        return String.format("%.0f docs/s, %.2f Mbytes/s", docs / seconds,
+                getCount(Stage.READ) / (1024.0 * 1024.0) / seconds);
+    }
+
+    /**
+     * Writes the report of a run, replacing the one of the previous run.
+     *
+     * @param indexDir      the index directory.
+     * @param docs          the number of documents indexed.
+     * @param files         the number of files indexed.
+     * @param bytes         the size in bytes of the files indexed.
+     * @param elapsedMillis the duration of the run.
+     * @throws IOException if the report cannot be written.
+     */
+    void write(final Path indexDir, final long docs, final long files, final long bytes, final long elapsedMillis)
+            throws IOException {
+
+        final double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+
+        final ObjectNode root = MAPPER.createObjectNode();
+        root.put("docs", docs);
+        root.put("files", files);
+        root.put("bytes", bytes);
+        root.put("elapsedMillis", elapsedMillis);
+        root.put("docsPerSecond", docs / seconds);
+        root.put("mbytesPerSecond", bytes / (1024.0 * 1024.0) / seconds);
+
+        //the times are summed over the threads
+        final ObjectNode stages = root.putObject("stages");
+        for (Stage s : Stage.values()) {
+            stages.putObject(s.toString())
+                    .put("millis", getNanos(s) / 1_000_000)
+                    .put("count", getCount(s));
+        }
+
+        final Path tmp = indexDir.resolve(FILE_NAME + ".tmp");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), root);
+        Files.move(tmp, indexDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Stage s : Stage.values()) {
+            sb.append(String.format("%s: %d ms (%d)%n", s, getNanos(s) / 1_000_000, getCount(s)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Times the analysis of a field, i.e. the time spent producing its tokens
+     *
+     * @version 1.00
+     * @since 1.00
+     */
+    private final class TimedFilter extends TokenFilter {
+
+        /**
+         * The time spent producing the tokens of the current field
+         */
+        private long nanos;
+
+        /**
+         * The number of tokens of the current field
+         */
+        private long tokens;
+
+        /**
+         * Creates a new filter.
+         *
+         * @param input the token stream to be timed.
+         */
+        private TimedFilter(final TokenStream input) {
+            super(input);
+        }
+
+        @Override
+        public boolean incrementToken() throws IOException {
+            final long t = System.nanoTime();
+            final boolean token = input.incrementToken();
+            nanos += System.nanoTime() - t;
+            if (token) {
+                tokens++;
+            }
+            return token;
+        }
+
+        @Override
+        public void end() throws IOException {
+            final long t = System.nanoTime();
+            super.end();
+            add(Stage.ANALYSIS, nanos + System.nanoTime() - t, tokens);
+            nanos = 0;
+            tokens = 0;
+        }
+
+        @Override
+        public void reset() throws IOException {
+            super.reset();
+            nanos = 0;
+            tokens = 0;
+        }
+    }
+}
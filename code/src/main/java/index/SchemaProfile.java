@@ -0,0 +1,154 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.IndexOptions;
+
+/**
+ * Named index schema profiles, choosing what is recorded for the text fields of the documents
+ * (see {@link BodyField} and {@link BodyCorrelatedField}).
+ * <p>
+ * Every profile keeps term frequencies and positions, which the ranking models and phrase queries need. The
+ * profiles differ, field by field, in the postings offsets, the term vectors and the stored values, which only some
+ * features need.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public enum SchemaProfile {
+
+    /**
+     * Only what is needed for searching: no offsets, no term vectors, no stored values
+     */
+    SEARCH_ONLY("search-only",
+            type(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS, false, false),
+            type(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS, false, false)),
+
+    /**
+     * Offsets in the postings and stored values, as needed by the highlighters
+     */
+    HIGHLIGHTING("highlighting",
+            type(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS, false, true),
+            type(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS, false, true)),
+
+    /**
+     * Term vectors of the body, as needed for relevance feedback and query expansion
+     */
+    FEEDBACK("feedback",
+            type(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS, true, false),
+            type(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS, false, false)),
+
+    /**
+     * Offsets and term vectors for every text field: the schema used before profiles were introduced
+     */
+    FULL("full",
+            type(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS, true, false),
+            type(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS, true, false));
+
+    /**
+     * The name of the profile
+     */
+    private final String name;
+
+    /**
+     * The type of the body of the documents
+     */
+    private final FieldType bodyType;
+
+    /**
+     * The type of the additional body-correlated information of the documents
+     */
+    private final FieldType bodyCorrelatedType;
+
+    /**
+     * Creates a new profile
+     *
+     * @param name               the name of the profile
+     * @param bodyType           the type of the body of the documents
+     * @param bodyCorrelatedType the type of the additional body-correlated information of the documents
+     */
+    SchemaProfile(final String name, final FieldType bodyType, final FieldType bodyCorrelatedType) {
+        this.name = name;
+        this.bodyType = bodyType;
+        this.bodyCorrelatedType = bodyCorrelatedType;
+    }
+
+    /**
+     * Creates the type of a tokenized text field.
+     *
+     * @param indexOptions what is recorded in the postings of the field.
+     * @param termVectors  whether the term vectors of the field are stored.
+     * @param stored       whether the values of the field are stored.
+     * @return the type of the field.
+     */
+    private static FieldType type(final IndexOptions indexOptions, final boolean termVectors, final boolean stored) {
+        final FieldType type = new FieldType();
+        type.setIndexOptions(indexOptions);
+        type.setTokenized(true);
+        type.setStored(stored);
+        type.setStoreTermVectors(termVectors);
+        type.freeze();
+        return type;
+    }
+
+    /**
+     * Returns the profile with the given name.
+     *
+     * @param name the name of the profile, e.g. {@code search-only}.
+     * @return the profile with the given name.
+     * @throws NullPointerException     if {@code name} is {@code null}.
+     * @throws IllegalArgumentException if there is no profile with the given name.
+     */
+    public static SchemaProfile of(final String name) {
+
+        if (name == null) {
+            throw new NullPointerException("Profile name cannot be null.");
+        }
+
+        for (SchemaProfile p : values()) {
+            if (p.name.equals(name)) {
+                return p;
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("Unknown schema profile %s.", name));
+    }
+
+    /**
+     * Returns the type of the body of the documents
+     *
+     * @return the type of the body of the documents
+     */
+    public FieldType bodyType() {
+        return bodyType;
+    }
+
+    /**
+     * Returns the type of the additional body-correlated information of the documents
+     *
+     * @return the type of the additional body-correlated information of the documents
+     */
+    public FieldType bodyCorrelatedType() {
+        return bodyCorrelatedType;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteBuffersDataOutput;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes the list of the sentence identifiers of a document as the value of a binary doc values field.
+ * <p>
+ * A sentence identifier is usually derived from the identifier of its argument, as in
+ * {@code Sb0680508-Aaa8d88c__PREMISE__41}: such identifiers are encoded as runs of consecutive sentence numbers of
+ * the same type, i.e. a type tag, the first number and the length of the run as variable-length integers. In the
+ * common case of a document with premises {@code 0..p} and conclusions {@code 0..c} the whole list takes a handful
+ * of bytes. Any other identifier is encoded literally.
+ * <p>
+ * Unlike sorted set doc values, the encoding keeps the order and the duplicates of the identifiers, since the
+ * premises and the conclusions of an argument are paired in the order they appear in the document.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public final class SentenceIDs {
+
+    /**
+     * The separator between the argument identifier, the sentence type and the sentence number
+     */
+    private static final String SEPARATOR = "__";
+
+    /**
+     * The types of sentences encoded as runs; the tag of a type is its index plus one
+     */
+    private static final String[] TYPES = {"PREMISE", "CONC"};
+
+    /**
+     * The tag of a literally encoded identifier
+     */
+    private static final byte LITERAL = 0;
+
+    /**
+     * This class cannot be instantiated
+     */
+    private SentenceIDs() {
+        throw new AssertionError("SentenceIDs cannot be instantiated.");
+    }
+
+    /**
+     * Encodes the list of the sentence identifiers of a document.
+     *
+     * @param id  the identifier of the document.
+     * @param ids the sentence identifiers.
+     * @return the encoded identifiers.
+     */
+    public static BytesRef encode(final String id, final String[] ids) {
+
+        final ByteBuffersDataOutput out = new ByteBuffersDataOutput();
+
+        try {
+            int i = 0;
+            while (i < ids.length) {
+
+                final int type = type(id, ids[i]);
+                if (type < 0) {
+                    out.writeByte(LITERAL);
+                    out.writeString(ids[i++]);
+                    continue;
+                }
+
+                //extend the run as long as the following sentences have the same type and the next number
+                final int first = number(id, type, ids[i]);
+                int length = 1;
+                while (i + length < ids.length && type(id, ids[i + length]) == type
+                        && number(id, type, ids[i + length]) == first + length) {
+                    length++;
+                }
+
+                out.writeByte((byte) (type + 1));
+                out.writeVInt(first);
+                out.writeVInt(length);
+                i += length;
+            }
+        } catch (IOException e) {
+            //never thrown while writing to memory
+            throw new UncheckedIOException(e);
+        }
+
+        return new BytesRef(out.toArrayCopy());
+    }
+
+    /**
+     * Decodes the list of the sentence identifiers of a document.
+     *
+     * @param id    the identifier of the document.
+     * @param value the encoded identifiers.
+     * @return the sentence identifiers, in their original order.
+     */
+    public static String[] decode(final String id, final BytesRef value) {
+
+        final ByteArrayDataInput in = new ByteArrayDataInput(value.bytes, value.offset, value.length);
+        final List<String> ids = new ArrayList<>();
+
+        try {
+            while (!in.eof()) {
+
+                final byte tag = in.readByte();
+                if (tag == LITERAL) {
+                    ids.add(in.readString());
+                    continue;
+                }
+
+                final String prefix = id + SEPARATOR + TYPES[tag - 1] + SEPARATOR;
+                final int first = in.readVInt();
+                final int length = in.readVInt();
+                for (int n = first; n < first + length; n++) {
+                    ids.add(prefix + n);
+                }
+            }
+        } catch (IOException e) {
+            //never thrown while reading from memory
+            throw new UncheckedIOException(e);
+        }
+
+        return ids.toArray(new String[0]);
+    }
+
+    /**
+     * Returns the type of a sentence identifier derived from the identifier of its document.
+     *
+     * @param id         the identifier of the document.
+     * @param sentenceID the sentence identifier.
+     * @return the index of the type in {@link #TYPES}, -1 if the identifier must be encoded literally.
+     */
+    private static int type(final String id, final String sentenceID) {
+
+        if (!sentenceID.startsWith(id) || !sentenceID.startsWith(SEPARATOR, id.length())) {
+            return -1;
+        }
+
+        for (int t = 0; t < TYPES.length; t++) {
+            final int start = id.length() + SEPARATOR.length();
+            if (sentenceID.startsWith(TYPES[t], start)
+                    && sentenceID.startsWith(SEPARATOR, start + TYPES[t].length())
+                    && number(id, t, sentenceID) >= 0) {
+                return t;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns the number of a sentence identifier of the given type.
+     *
+     * @param id         the identifier of the document.
+     * @param type       the index of the type in {@link #TYPES}.
+     * @param sentenceID the sentence identifier.
+     * @return the number of the sentence, -1 if it is not a canonical non-negative integer.
+     */
+    private static int number(final String id, final int type, final String sentenceID) {
+
+        final int start = id.length() + 2 * SEPARATOR.length() + TYPES[type].length();
+        final int length = sentenceID.length() - start;
+
+        //leading zeros would not survive the decoding
+        if (length <= 0 || length > 9 || (length > 1 && sentenceID.charAt(start) == '0')) {
+            return -1;
+        }
+
+        int n = 0;
+        for (int i = start; i < sentenceID.length(); i++) {
+            final char c = sentenceID.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            n = n * 10 + (c - '0');
+        }
+
+        return n;
+    }
+}
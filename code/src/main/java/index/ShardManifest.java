@@ -0,0 +1,192 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Manifest of the layout of a sharded index.
+ * <p>
+ * A sharded index directory contains one independent Lucene index for every shard, in the subdirectories
+ * {@code shard-0}, {@code shard-1}, ... Every document is routed to a shard by the hash of its identifier, so that the
+ * same document always ends up in the same shard and it can be updated or deleted there. The manifest records the
+ * number of shards, the routing, the shard directories and the number of documents of each shard.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public class ShardManifest {
+
+    /**
+     * The name of the manifest file within the index directory
+     */
+    public static final String FILE_NAME = "touche-shards.json";
+
+    /**
+     * The name of the routing of the documents to the shards
+     */
+    public static final String ROUTING = "id-hash";
+
+    /**
+     * The object mapper used for reading and writing the manifest
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The directories of the shards, relative to the index directory
+     */
+    private final List<String> directories;
+
+    /**
+     * The number of documents of each shard
+     */
+    private final long[] docs;
+
+    /**
+     * Creates a new manifest
+     *
+     * @param docs the number of documents of each shard.
+     */
+    public ShardManifest(final long[] docs) {
+        this.docs = docs.clone();
+        this.directories = new ArrayList<>();
+        for (int s = 0; s < docs.length; s++) {
+            directories.add(directory(s));
+        }
+    }
+
+    /**
+     * Returns the directory of a shard, relative to the index directory
+     *
+     * @param shard the shard.
+     * @return the directory of the shard.
+     */
+    public static String directory(final int shard) {
+        return "shard-" + shard;
+    }
+
+    /**
+     * Returns the shard of a document.
+     *
+     * @param id     the identifier of the document.
+     * @param shards the number of shards.
+     * @return the shard of the document.
+     */
+    public static int shardOf(final String id, final int shards) {
+        //String.hashCode() is specified, hence the routing does not change across JVMs
+        return Math.floorMod(id.hashCode(), shards);
+    }
+
+    /**
+     * Reads the manifest of an index directory.
+     *
+     * @param indexDir the index directory.
+     * @return the manifest of the index directory, {@code null} if the index is not sharded.
+     * @throws IOException if the manifest cannot be read or it uses an unknown routing.
+     */
+    public static ShardManifest read(final Path indexDir) throws IOException {
+
+        final Path file = indexDir.resolve(FILE_NAME);
+
+        if (Files.notExists(file)) {
+            return null;
+        }
+
+        final JsonNode root = MAPPER.readTree(file.toFile());
+
+        if (!ROUTING.equals(root.path("routing").asText())) {
+            throw new IOException(String.format("Unknown shard routing %s in %s.", root.path("routing").asText(),
+                    file.toAbsolutePath()));
+        }
+
+        final JsonNode shards = root.path("shards");
+        final long[] docs = new long[shards.size()];
+        for (int s = 0; s < docs.length; s++) {
+            docs[s] = shards.get(s).path("docs").asLong();
+        }
+
+        final ShardManifest manifest = new ShardManifest(docs);
+        for (int s = 0; s < docs.length; s++) {
+            manifest.directories.set(s, shards.get(s).path("directory").asText(directory(s)));
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest in an index directory, replacing the previous one atomically.
+     *
+     * @param indexDir the index directory.
+     * @throws IOException if the manifest cannot be written.
+     */
+    public void write(final Path indexDir) throws IOException {
+
+        final ObjectNode root = MAPPER.createObjectNode();
+        root.put("routing", ROUTING);
+
+        final ArrayNode shards = root.putArray("shards");
+        for (int s = 0; s < docs.length; s++) {
+            shards.addObject()
+                    .put("directory", directories.get(s))
+                    .put("docs", docs[s]);
+        }
+
+        final Path tmp = indexDir.resolve(FILE_NAME + ".tmp");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), root);
+        Files.move(tmp, indexDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the number of shards
+     *
+     * @return the number of shards
+     */
+    public int getShards() {
+        return docs.length;
+    }
+
+    /**
+     * Returns the directories of the shards, relative to the index directory
+     *
+     * @return the directories of the shards, relative to the index directory
+     */
+    public List<String> getDirectories() {
+        return Collections.unmodifiableList(directories);
+    }
+
+    /**
+     * Returns the number of documents of a shard.
+     *
+     * @param shard the shard.
+     * @return the number of documents of the shard.
+     */
+    public long getDocs(final int shard) {
+        return docs[shard];
+    }
+}
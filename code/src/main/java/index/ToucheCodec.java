@@ -0,0 +1,88 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.bloom.BloomFilteringPostingsFormat;
+import org.apache.lucene.codecs.lucene90.Lucene90Codec;
+import parse.ParsedDocument;
+
+import java.util.Map;
+
+/**
+ * The codec used for writing the index.
+ * <p>
+ * It is the default codec with a choice of the compression of the stored fields and of the postings format of every
+ * field. The postings of the {@link ParsedDocument.FIELDS#ID} field can be wrapped in a bloom filter: every segment
+ * records the set of its identifiers, so that looking up an identifier, as done by the upserts of the incremental
+ * indexing and by {@link search.ArgumentLookup}, skips without any seek in the terms dictionary the segments which
+ * cannot contain it. The compression mode and the postings format of every field are recorded in the segments, so
+ * the index can be read with the default codec, as long as the chosen postings formats are on the classpath.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public class ToucheCodec extends Lucene90Codec {
+
+    /**
+     * The postings format of the fields not using the default one
+     */
+    private final Map<String, PostingsFormat> postings;
+
+    /**
+     * The postings format of the identifiers
+     */
+    private final PostingsFormat idPostings;
+
+    /**
+     * Creates a new codec with bloom-filtered identifiers and the stored fields compressed for speed.
+     */
+    public ToucheCodec() {
+        this(Mode.BEST_SPEED, true, Map.of());
+    }
+
+    /**
+     * Creates a new codec.
+     *
+     * @param mode        the compression mode of the stored fields.
+     * @param bloomFilter whether the identifiers are written with a bloom filter.
+     * @param postings    the postings format of the fields not using the default one.
+     * @throws NullPointerException if {@code mode} or {@code postings} are {@code null}.
+     */
+    public ToucheCodec(final Mode mode, final boolean bloomFilter, final Map<String, PostingsFormat> postings) {
+        super(mode);
+
+        if (postings == null) {
+            throw new NullPointerException("Postings formats cannot be null.");
+        }
+
+        this.postings = Map.copyOf(postings);
+
+        final PostingsFormat id = this.postings.getOrDefault(ParsedDocument.FIELDS.ID,
+                super.getPostingsFormatForField(ParsedDocument.FIELDS.ID));
+        idPostings = bloomFilter ? new BloomFilteringPostingsFormat(id) : id;
+    }
+
+    @Override
+    public PostingsFormat getPostingsFormatForField(final String field) {
+        if (ParsedDocument.FIELDS.ID.equals(field)) {
+            return idPostings;
+        }
+        final PostingsFormat pf = postings.get(field);
+        return pf != null ? pf : super.getPostingsFormatForField(field);
+    }
+}
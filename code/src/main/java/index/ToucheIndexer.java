@@ -16,25 +16,56 @@
 
 package index;
 
+import analyze.TextScores;
 import analyze.ToucheAnalyzer;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene90.Lucene90Codec;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FloatDocValuesField;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexFileNames;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
+import org.apache.lucene.index.PersistentSnapshotDeletionPolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.similarities.LMDirichletSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import parse.CompressedCorpus;
 import parse.DocumentParser;
 import parse.ParsedDocument;
+import parse.ToucheCacheParser;
+import parse.ToucheFileSplit;
 import parse.ToucheParser;
+import parse.ToucheStreamParser;
 import utils.Constants;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Indexer object for indexing the Touche Collection
@@ -52,9 +83,135 @@ public class ToucheIndexer {
     private static final int MBYTE = 1024 * 1024;
 
     /**
-     * The index writer.
+     * The sort of the documents by discussion: the identifier of an argument starts with the identifier of its
+     * discussion (e.g. {@code Sb0680508} in {@code Sb0680508-Aaa8d88c}), so sorting by identifier keeps the arguments
+     * of the same discussion together.
      */
-    private final IndexWriter writer;
+    public static final Sort DISCUSSION_SORT = new Sort(new SortField(ParsedDocument.FIELDS.ID, SortField.Type.STRING));
+
+    /**
+     * Number of parsed documents that can wait in the queue for each indexing thread
+     */
+    private static final int QUEUE_DOCS_PER_THREAD = 256;
+
+    /**
+     * The fields of the parsed documents which are indexed: the parser can skip decoding the others
+     */
+    private static final Set<String> INDEXED_FIELDS = Set.of(ParsedDocument.FIELDS.ID,
+            ParsedDocument.FIELDS.CONCLUSION, ParsedDocument.FIELDS.STANCE, ParsedDocument.FIELDS.DISCUSSION_TITLE,
+            ParsedDocument.FIELDS.SOURCE_TITLE, ParsedDocument.FIELDS.SOURCE_TEXT, ParsedDocument.FIELDS.SENTENCES);
+
+    /**
+     * The analyzer used for indexing the documents.
+     */
+    private final Analyzer analyzer;
+
+    /**
+     * The similarity used for indexing the documents.
+     */
+    private final Similarity similarity;
+
+    /**
+     * The size in megabytes of the RAM buffer for indexing documents.
+     */
+    private final int ramBufferSizeMB;
+
+    /**
+     * The directory where the index is stored.
+     */
+    private final Path rootDir;
+
+    /**
+     * The directory written by the current run: the index directory itself, or one of its builds if the index is
+     * versioned.
+     */
+    private Path indexDir;
+
+    /**
+     * Whether the index is versioned, i.e. every rebuild is written into a new build of the index directory.
+     */
+    private boolean versioned;
+
+    /**
+     * The schema profile choosing what is recorded for the text fields.
+     */
+    private SchemaProfile profile = SchemaProfile.SEARCH_ONLY;
+
+    /**
+     * Whether the sentiment and readability scores of the conclusions are computed and stored in the index.
+     */
+    private boolean enrichment = true;
+
+    /**
+     * Whether the documents are sorted by discussion within the index.
+     */
+    private boolean discussionSort;
+
+    /**
+     * The number of segments the index is merged into before the final commit, 0 for not merging it.
+     */
+    private int finalSegments;
+
+    /**
+     * Whether the sidecar mapping the documents to their identifiers, stances and sentences is written.
+     */
+    private boolean hitSidecar = true;
+
+    /**
+     * Whether the identifiers are written with a bloom filter (see {@link ToucheCodec}).
+     */
+    private boolean bloomFilter = true;
+
+    /**
+     * The compression mode of the stored fields.
+     */
+    private Lucene90Codec.Mode storedFieldsMode = Lucene90Codec.Mode.BEST_SPEED;
+
+    /**
+     * Whether the segments are written as compound files.
+     */
+    private boolean compoundFile = true;
+
+    /**
+     * The postings format of the fields not using the default one.
+     */
+    private final Map<String, PostingsFormat> postingsFormats = new HashMap<>();
+
+    /**
+     * The directory of the pre-parsed corpus cache, {@code null} if the collection is always parsed.
+     */
+    private Path cacheDir;
+
+    /**
+     * The variants of the index, built from the same parsed documents with different analyzers.
+     */
+    private final List<Variant> variants = new ArrayList<>();
+
+    /**
+     * The index writers, one for every shard, open while indexing.
+     */
+    private IndexWriter[] writers;
+
+    /**
+     * The number of shards of the index
+     */
+    private int shards = 1;
+
+    /**
+     * How the index is opened: {@code CREATE} rebuilds it from scratch, while {@code APPEND} and
+     * {@code CREATE_OR_APPEND} update it with the files that changed since the last indexing.
+     */
+    private IndexWriterConfig.OpenMode openMode = IndexWriterConfig.OpenMode.CREATE;
+
+    /**
+     * Whether the documents are upserted by identifier instead of being just added.
+     */
+    private boolean upsert;
+
+    /**
+     * The generation of the current indexing run (see {@link IndexManifest}).
+     */
+    private long generation;
 
     /**
      * The class of the {@code DocumentParser} to be used for collection parsing
@@ -84,22 +241,67 @@ public class ToucheIndexer {
     /**
      * The start instant of the indexing.
      */
-    private final long start;
+    private long start;
 
     /**
      * The total number of indexed files.
      */
-    private long filesCount;
+    private final AtomicLong filesCount;
 
     /**
      * The total number of indexed documents.
      */
-    private long docsCount;
+    private final AtomicLong docsCount;
 
     /**
      * The total number of indexed bytes
      */
-    private long bytesCount;
+    private final AtomicLong bytesCount;
+
+    /**
+     * The per-stage counters and timers of the current run
+     */
+    private final IndexingStats stats = new IndexingStats();
+
+    /**
+     * The number of threads parsing the collection files
+     */
+    private int parsingThreads = 1;
+
+    /**
+     * The number of threads adding the parsed documents to the index
+     */
+    private int indexingThreads = 1;
+
+    /**
+     * The number of indexed documents after which the index is committed as a checkpoint, 0 for never
+     */
+    private long checkpointDocs;
+
+    /**
+     * The number of seconds after which the index is committed as a checkpoint, 0 for never
+     */
+    private long checkpointSeconds;
+
+    /**
+     * The progress of the current indexing run, {@code null} if checkpoints are disabled
+     */
+    private IndexCheckpoint checkpoint;
+
+    /**
+     * The number of documents indexed since the last checkpoint
+     */
+    private final AtomicLong checkpointCount = new AtomicLong();
+
+    /**
+     * The instant of the last checkpoint
+     */
+    private volatile long checkpointTime;
+
+    /**
+     * The lock held while committing a checkpoint
+     */
+    private final ReentrantLock checkpointLock = new ReentrantLock();
 
     /**
      * Creates a new indexer
@@ -109,7 +311,8 @@ public class ToucheIndexer {
      * @param ramBufferSizeMB the size in megabytes of the RAM buffer for indexing documents.
      * @param indexPath       the directory where to store the index.
      * @param docsPath        the directory from which documents have to be read.
-     * @param extension       the extension of the files to be indexed.
+     * @param extension       the extension of the files to be indexed; the files with this extension followed by
+     *                        {@code .gz} are indexed as well, decompressing them while parsing.
      * @param charsetName     the name of the charset used for encoding documents.
      * @param expectedDocs    the total number of documents expected to be indexed
      * @param dpCls           the class of the {@code DocumentParser} to be used.
@@ -139,40 +342,12 @@ public class ToucheIndexer {
             throw new IllegalArgumentException("RAM buffer size cannot be less than or equal to zero.");
         }
 
-        //setting up the Lucene IndexWriter object
-        final IndexWriterConfig iwc = new IndexWriterConfig(analyzer);
-        iwc.setSimilarity(similarity);
-        iwc.setRAMBufferSizeMB(ramBufferSizeMB);
-        iwc.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
-        iwc.setCommitOnClose(true);
-        iwc.setUseCompoundFile(true);
-
-        if (indexPath == null) {
-            throw new NullPointerException("Index path cannot be null.");
-        }
-
-        if (indexPath.isEmpty()) {
-            throw new IllegalArgumentException("Index path cannot be empty.");
-        }
-
-        final Path indexDir = Paths.get(indexPath);
-
-        // if the directory does not already exist, create it
-        if (Files.notExists(indexDir)) {
-            try {
-                Files.createDirectory(indexDir);
-            } catch (Exception e) {
-                throw new IllegalArgumentException(String.format("Unable to create directory %s: %s.", indexDir.toAbsolutePath(), e.getMessage()), e);
-            }
-        }
-
-        if (!Files.isWritable(indexDir)) {
-            throw new IllegalArgumentException(String.format("Index directory %s cannot be written.", indexDir.toAbsolutePath()));
-        }
+        this.analyzer = analyzer;
+        this.similarity = similarity;
+        this.ramBufferSizeMB = ramBufferSizeMB;
 
-        if (!Files.isDirectory(indexDir)) {
-            throw new IllegalArgumentException(String.format("%s expected to be a directory where to write the index.", indexDir.toAbsolutePath()));
-        }
+        this.rootDir = indexDirectory(indexPath);
+        this.indexDir = rootDir;
 
         if (docsPath == null) {
             throw new NullPointerException("Documents path cannot be null.");
@@ -225,131 +400,1359 @@ public class ToucheIndexer {
         }
         this.expectedDocs = expectedDocs;
 
-        this.docsCount = 0;
+        this.docsCount = new AtomicLong();
 
-        this.bytesCount = 0;
+        this.bytesCount = new AtomicLong();
 
-        this.filesCount = 0;
-
-        try {
-            writer = new IndexWriter(FSDirectory.open(indexDir), iwc);
-        } catch (IOException e) {
-            throw new IllegalArgumentException(String.format("Unable to create the index writer in directory %s: %s.",
-                    indexDir.toAbsolutePath().toString(), e.getMessage()), e);
-        }
+        this.filesCount = new AtomicLong();
 
         this.start = System.currentTimeMillis();
 
     }
 
     /**
-     * Indexes the documents.
+     * Checks the directory where an index is stored, creating it if it does not exist.
      *
-     * @throws IOException if something goes wrong while indexing.
+     * @param indexPath the directory where to store the index.
+     * @return the directory where to store the index.
+     * @throws NullPointerException     if {@code indexPath} is {@code null}.
+     * @throws IllegalArgumentException if {@code indexPath} is not a writable directory.
      */
-    public void index() throws IOException {
-
-        System.out.printf("%n#### Start indexing ####%n");
-
-        //visit the collection directory
-        Files.walkFileTree(docsDir, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                //file extension check
-                if (file.getFileName().toString().endsWith(extension)) {
+    private static Path indexDirectory(final String indexPath) {
 
-                    //creating the ToucheParser
-                    DocumentParser dp = DocumentParser.create(dpCls, Files.newBufferedReader(file, cs));
-
-                    bytesCount += Files.size(file);
+        if (indexPath == null) {
+            throw new NullPointerException("Index path cannot be null.");
+        }
 
-                    filesCount += 1;
+        if (indexPath.isEmpty()) {
+            throw new IllegalArgumentException("Index path cannot be empty.");
+        }
 
-                    Document doc = null; //Lucene Document
+        final Path indexDir = Paths.get(indexPath);
 
-                    for (ParsedDocument pd : dp) {
+        // if the directory does not already exist, create it
+        if (Files.notExists(indexDir)) {
+            try {
+                Files.createDirectory(indexDir);
+            } catch (Exception e) {
+                throw new IllegalArgumentException(String.format("Unable to create directory %s: %s.", indexDir.toAbsolutePath(), e.getMessage()), e);
+            }
+        }
 
-                        //create the Lucene Document
-                        doc = new Document();
+        if (!Files.isWritable(indexDir)) {
+            throw new IllegalArgumentException(String.format("Index directory %s cannot be written.", indexDir.toAbsolutePath()));
+        }
 
-                        //add the document identifier
-                        doc.add(new StringField(ParsedDocument.FIELDS.ID, pd.getIdentifier(), Field.Store.YES));
+        if (!Files.isDirectory(indexDir)) {
+            throw new IllegalArgumentException(String.format("%s expected to be a directory where to write the index.", indexDir.toAbsolutePath()));
+        }
 
-                        //add the document text
-                        doc.add(new BodyField(pd.getSourceText()));
+        return indexDir;
+    }
 
-                        //add additional body correlated information (Conclusion)
-                        doc.add(new BodyCorrelatedField(ParsedDocument.FIELDS.CONCLUSION, pd.getConclusion()));
+    /**
+     * Adds a variant of the index, built from the same parsed documents with a different analyzer: the collection
+     * is parsed only once and every parsed document is added to the index and to all its variants. This is meant
+     * for tuning sweeps (e.g. over stoplists or stemmers), so variants are always rebuilt from scratch and
+     * incremental indexing and checkpoints are not supported together with them.
+     *
+     * @param analyzer  the {@code Analyzer} of the variant.
+     * @param indexPath the directory where to store the variant of the index.
+     * @throws NullPointerException     if any of the parameters is {@code null}.
+     * @throws IllegalArgumentException if {@code indexPath} is not a writable directory or is already used.
+     */
+    public void addVariant(final Analyzer analyzer, final String indexPath) {
 
-                        //add additional body correlated information (Discussion Title)
-                        doc.add(new BodyCorrelatedField(ParsedDocument.FIELDS.DISCUSSION_TITLE, pd.getDiscussionTitle()));
+        if (analyzer == null) {
+            throw new NullPointerException("Analyzer cannot be null.");
+        }
 
-                        //add additional body correlated information (Source Title)
-                        doc.add(new BodyCorrelatedField(ParsedDocument.FIELDS.SOURCE_TITLE, pd.getSourceTitle()));
+        final Path dir = indexDirectory(indexPath);
 
-                        //add document Stance
-                        doc.add(new IDKeyField(ParsedDocument.FIELDS.STANCE, pd.getStance()));
+        if (dir.toAbsolutePath().normalize().equals(rootDir.toAbsolutePath().normalize())
+                || variants.stream().anyMatch(v -> v.indexDir.toAbsolutePath().normalize()
+                .equals(dir.toAbsolutePath().normalize()))) {
+            throw new IllegalArgumentException(String.format("Index directory %s is already used.", dir.toAbsolutePath()));
+        }
 
-                        //add document sentences id
-                        ParsedDocument.Sentence[] sentences = pd.getSentences();
-                        for (ParsedDocument.Sentence s : sentences) {
-                            doc.add(new StringField(ParsedDocument.FIELDS.SENTENCES, s.getID(), Field.Store.YES));
-                        }
+        variants.add(new Variant(analyzer, dir));
+    }
 
-                        writer.addDocument(doc); //index the document
+    /**
+     * Returns the directory of the index
+     *
+     * @return the directory of the index
+     */
+    Path getIndexDir() {
+        return rootDir;
+    }
 
-                        docsCount++;
+    /**
+     * Returns whether the index is versioned
+     *
+     * @return whether the index is versioned
+     */
+    boolean isVersioned() {
+        return versioned;
+    }
 
-                        // print progress every 10000 indexed documents, only for debug purpose
-                        if (docsCount % 10000 == 0) {
-                            System.out.printf("%d document(s) (%d files, %d Mbytes) indexed in %d seconds.%n",
-                                    docsCount, filesCount, bytesCount / MBYTE,
-                                    (System.currentTimeMillis() - start) / 1000);
-                        }
+    /**
+     * Returns the directory of the collection
+     *
+     * @return the directory of the collection
+     */
+    Path getDocsDir() {
+        return docsDir;
+    }
 
-                    }
+    /**
+     * Checks whether a file is a collection file, i.e. it has the extension of the collection files, possibly
+     * followed by the extension of the compressed files (see {@link CompressedCorpus})
+     *
+     * @param file the file
+     * @return whether the file is a collection file
+     */
+    boolean isCollectionFile(final Path file) {
+        return CompressedCorpus.matches(file, extension);
+    }
 
-                }
-                return FileVisitResult.CONTINUE;
-            }
-        });
+    /**
+     * Returns the number of shards of the index
+     *
+     * @return the number of shards of the index
+     */
+    int getShards() {
+        return shards;
+    }
 
-        //indexer commit and resource release
-        writer.commit();
-        writer.close();
+    /**
+     * Returns the similarity of the index
+     *
+     * @return the similarity of the index
+     */
+    Similarity getSimilarity() {
+        return similarity;
+    }
 
-        if (docsCount != expectedDocs) {
-            System.out.printf("Expected to index %d documents; %d indexed instead.%n", expectedDocs, docsCount);
+    /**
+     * Sets the number of threads used for parsing the collection files.
+     * With more than one thread every file is split into record-aligned ranges (see {@link ToucheFileSplit}), which
+     * are parsed in parallel. The compressed files (see {@link CompressedCorpus}) are not split, but each of them is
+     * parsed in parallel with the others.
+     *
+     * @param parsingThreads the number of parsing threads.
+     * @throws IllegalArgumentException if {@code parsingThreads} is less than or equal to zero.
+     */
+    public void setParsingThreads(final int parsingThreads) {
+        if (parsingThreads <= 0) {
+            throw new IllegalArgumentException("The number of parsing threads cannot be less than or equal to zero.");
         }
+        this.parsingThreads = parsingThreads;
+    }
 
-        System.out.printf("%d document(s) (%d files, %d Mbytes) indexed in %d seconds.%n", docsCount, filesCount,
-                bytesCount / MBYTE, (System.currentTimeMillis() - start) / 1000);
-
-        System.out.printf("#### Indexing complete ####%n");
+    /**
+     * Sets the number of threads that analyze the parsed documents and add them to the shared {@code IndexWriter}.
+     *
+     * @param indexingThreads the number of indexing threads.
+     * @throws IllegalArgumentException if {@code indexingThreads} is less than or equal to zero.
+     */
+    public void setIndexingThreads(final int indexingThreads) {
+        if (indexingThreads <= 0) {
+            throw new IllegalArgumentException("The number of indexing threads cannot be less than or equal to zero.");
+        }
+        this.indexingThreads = indexingThreads;
     }
 
     /**
-     * ONLY FOR DEBUGGING PURPOSE
+     * Indexes the documents.
+     * <p>
+     * The parsing threads read the collection files and put the parsed documents in a bounded queue, from which the
+     * indexing threads take them for adding them to the index. With one parsing and one indexing thread the documents
+     * are indexed in the order in which they are found in the collection.
      *
-     * @param args command line arguments.
-     * @throws Exception if something goes wrong while indexing.
+     * @throws IOException if something goes wrong while indexing.
      */
-    public static void main(String[] args) throws Exception {
+    public void index() throws IOException {
 
-        final int ramBuffer = 256;
-        final String indexPath = Constants.manuelIndexPath;
-        final String docsPath = Constants.manuelDocsPath;
+        System.out.printf("%n#### Start indexing ####%n");
 
-        final String extension = "csv";
-        final int expectedDocs = 365408;
-        final String charsetName = "ISO-8859-1";
+        //the indexer can be run several times, e.g. by the indexing service: the counters are per run
+        start = System.currentTimeMillis();
+        docsCount.set(0);
+        bytesCount.set(0);
+        filesCount.set(0);
+        stats.reset();
+
+        if (!variants.isEmpty() && (openMode != IndexWriterConfig.OpenMode.CREATE || checkpointDocs > 0
+                || checkpointSeconds > 0)) {
+            throw new IllegalStateException(
+                    "Index variants can only be rebuilt from scratch, without checkpoints.");
+        }
 
-        final Analyzer a = new ToucheAnalyzer();
+        if (shards > 1 && (checkpointDocs > 0 || checkpointSeconds > 0)) {
+            throw new IllegalStateException("A sharded index cannot be indexed with checkpoints.");
+        }
 
-        final Similarity sim = new LMDirichletSimilarity(1800);
+        if (versioned && shards > 1) {
+            throw new IllegalStateException("A versioned index cannot be sharded.");
+        }
 
-        ToucheIndexer i = new ToucheIndexer(a, sim, ramBuffer, indexPath, docsPath, extension,
-                charsetName, expectedDocs, ToucheParser.class);
+        //a rebuild of a versioned index is written into a new build, while the current one is still searched
+        final IndexVersions versions = versioned ? new IndexVersions(rootDir) : null;
+        final String current = versions == null ? null : versions.current();
+        if (versions == null) {
+            indexDir = rootDir;
+        } else if (openMode == IndexWriterConfig.OpenMode.CREATE || current == null) {
+            indexDir = versions.newBuild();
+        } else {
+            indexDir = versions.directory(current);
+        }
+
+        final Directory dir = FSDirectory.open(indexDir);
+
+        //look for the checkpoint of an interrupted run of the indexer over the same collection
+        IndexCheckpoint resumed = null;
+        if (checkpointDocs > 0 || checkpointSeconds > 0) {
+            resumed = IndexCheckpoint.read(dir);
+            if (resumed != null && !docsDir.toAbsolutePath().toString().equals(resumed.getDocsDir())) {
+                System.out.printf("Ignoring the checkpoint of the interrupted indexing of %s.%n", resumed.getDocsDir());
+                resumed = null;
+            }
+        }
+
+        //a resumed run keeps the open mode of the interrupted one
+        final IndexWriterConfig.OpenMode mode = resumed == null ? openMode : resumed.getOpenMode();
+
+        //with a full rebuild the manifest of the previous index is replaced only once the new index has been committed
+        final IndexManifest previous = IndexManifest.read(indexDir);
+        final IndexManifest manifest = mode == IndexWriterConfig.OpenMode.CREATE ? new IndexManifest() : previous;
+
+        //the documents are routed to the shards by identifier: the number of shards of an index cannot change
+        final ShardManifest layout = ShardManifest.read(indexDir);
+        final int existingShards = layout != null ? layout.getShards() : DirectoryReader.indexExists(dir) ? 1 : 0;
+        if (mode != IndexWriterConfig.OpenMode.CREATE && existingShards > 0 && existingShards != shards) {
+            throw new IllegalStateException(String.format(
+                    "The index in %s has %d shard(s) instead of %d: it has to be rebuilt from scratch.",
+                    indexDir.toAbsolutePath(), existingShards, shards));
+        }
+
+        //the documents indexed before the interruption are indexed again by identifier
+        upsert = resumed != null || (mode != IndexWriterConfig.OpenMode.CREATE && existingShards > 0);
+        //the generation recorded by the last commit survives a failed rebuild, and a crash before the manifest is written
+        generation = resumed == null
+                ? Math.max(previous.getGeneration(), lastGeneration(dir, layout)) + 1 : resumed.getGeneration();
+
+        if (resumed != null) {
+            checkpoint = resumed;
+            System.out.printf("Resuming the interrupted indexing: %d unit(s) already indexed.%n",
+                    resumed.resumedUnits());
+        } else if (checkpointDocs > 0 || checkpointSeconds > 0) {
+            checkpoint = new IndexCheckpoint(docsDir.toAbsolutePath().toString(), mode, generation, Map.of());
+        } else {
+            checkpoint = null;
+        }
+        checkpointTime = System.currentTimeMillis();
+
+        //visit the collection directory
+        final Map<String, Path> files = new TreeMap<>();
+        Files.walkFileTree(docsDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                //file extension check
+                if (isCollectionFile(file)) {
+                    files.put(fileKey(file), file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        //only the files that changed since the last indexing have to be (re)indexed: their stamp is taken now, before
+        //parsing them, and recorded in the manifest once they have been indexed
+        final Map<String, IndexManifest.Stamp> changed = new TreeMap<>();
+        for (Map.Entry<String, Path> e : files.entrySet()) {
+            final IndexManifest.Stamp stamp = manifest.changed(e.getKey(), e.getValue());
+            if (stamp != null) {
+                changed.put(e.getKey(), stamp);
+            }
+        }
+
+        final Set<String> removed = new TreeSet<>(manifest.keys());
+        removed.removeAll(files.keySet());
+
+        //the commits of a versioned index held by the searchers are not deleted by the commits of this run
+        final PersistentSnapshotDeletionPolicy snapshots = versions == null ? null
+                : new PersistentSnapshotDeletionPolicy(new KeepOnlyLastCommitDeletionPolicy(), dir,
+                IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+
+        writers = new IndexWriter[shards];
+        for (int s = 0; s < shards; s++) {
+            final Path shardDir = shards == 1 ? indexDir : indexDir.resolve(ShardManifest.directory(s));
+            try {
+                final IndexWriterConfig iwc = createWriterConfig(analyzer,
+                        resumed == null ? mode : IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+                if (snapshots != null) {
+                    iwc.setIndexDeletionPolicy(snapshots);
+                }
+                writers[s] = new IndexWriter(shards == 1 ? dir : FSDirectory.open(shardDir), iwc);
+
+                //the commit the searchers may be reading is protected until no lease holds it
+                if (snapshots != null && mode != IndexWriterConfig.OpenMode.CREATE && upsert) {
+                    snapshots.snapshot();
+                }
+            } catch (IOException e) {
+                rollback();
+                throw new IllegalArgumentException(String.format("Unable to create the index writer in directory %s: %s.",
+                        shardDir.toAbsolutePath().toString(), e.getMessage()), e);
+            }
+        }
+
+        for (Variant v : variants) {
+            try {
+                v.writer = new IndexWriter(FSDirectory.open(v.indexDir),
+                        createWriterConfig(v.analyzer, IndexWriterConfig.OpenMode.CREATE));
+            } catch (IOException e) {
+                rollback();
+                throw new IllegalArgumentException(String.format("Unable to create the index writer in directory %s: %s.",
+                        v.indexDir.toAbsolutePath().toString(), e.getMessage()), e);
+            }
+        }
+
+        final BlockingQueue<QueuedDocument> queue = new ArrayBlockingQueue<>(QUEUE_DOCS_PER_THREAD * indexingThreads);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final ExecutorService parsers = Executors.newFixedThreadPool(parsingThreads);
+        final ExecutorService indexers = Executors.newFixedThreadPool(indexingThreads);
+
+        try {
+            final List<Future<?>> consumers = new ArrayList<>();
+            for (int t = 0; t < indexingThreads; t++) {
+                consumers.add(indexers.submit(() -> consume(queue, failure)));
+            }
+
+            final List<Future<?>> producers = new ArrayList<>();
+            for (Map.Entry<String, IndexManifest.Stamp> e : changed.entrySet()) {
+
+                final String key = e.getKey();
+                final Path file = e.getValue().getFile();
+
+                bytesCount.addAndGet(Files.size(file));
+
+                filesCount.incrementAndGet();
+
+                if (cacheDir != null) {
+                    // the documents are read from the pre-parsed corpus cache, (re)built if the file changed
+                    final Path cache = cacheDir.resolve(ToucheCacheParser.fileName(key));
+                    if (!ToucheCacheParser.isValid(cache, file, key)) {
+                        System.out.printf("Building the corpus cache of %s.%n", key);
+                        ToucheCacheParser.build(file, key, cs, dpCls, cache);
+                    }
+
+                    final IndexCheckpoint.Unit unit = unit(String.format("%s@cache-%d", key,
+                            Files.getLastModifiedTime(file).toMillis()));
+                    if (unit != null || checkpoint == null) {
+                        producers.add(parsers.submit(() -> {
+                            final ToucheCacheParser dp = new ToucheCacheParser(cache, INDEXED_FIELDS);
+                            dp.setStreamingSourceText(true);
+                            if (unit != null) {
+                                try {
+                                    dp.seek(unit.start());
+                                } catch (IOException | RuntimeException ex) {
+                                    dp.close();
+                                    throw ex;
+                                }
+                            }
+                            produce(key, unit, dp, queue, failure);
+                            return null;
+                        }));
+                    }
+                } else if (parsingThreads == 1 || CompressedCorpus.isCompressed(file)) {
+                    // a compressed file cannot be split: it is decompressed by a thread of its own while it is parsed
+                    final IndexCheckpoint.Unit unit = unit(String.format("%s@%d-%d", key, 0, Files.size(file)));
+                    if (unit != null || checkpoint == null) {
+                        producers.add(parsers.submit(() -> {
+                            produce(key, unit, parser(unit, CompressedCorpus.newReader(file, cs)), queue, failure);
+                            return null;
+                        }));
+                    }
+                } else {
+                    // the collection is essentially a single huge file: split it and parse the splits in parallel
+                    for (ToucheFileSplit split : ToucheParser.split(file, cs, parsingThreads)) {
+                        final IndexCheckpoint.Unit unit = unit(String.format("%s@%d-%d", key, split.getStart(),
+                                split.getEnd()));
+                        if (unit != null || checkpoint == null) {
+                            producers.add(parsers.submit(() -> {
+                                produce(key, unit, parser(unit, split.open()), queue, failure);
+                                return null;
+                            }));
+                        }
+                    }
+                }
+            }
+
+            for (Future<?> f : producers) {
+                await(f, failure);
+            }
+
+            //one end marker for every indexing thread
+            for (int t = 0; t < indexingThreads; t++) {
+                queue.put(QueuedDocument.END);
+            }
+
+            for (Future<?> f : consumers) {
+                await(f, failure);
+            }
+
+            if (upsert && failure.get() == null) {
+                //the documents of a file are spread over every shard
+                for (IndexWriter writer : writers) {
+
+                    //delete the documents no longer contained in the changed files, i.e. the ones of older generations
+                    for (String key : changed.keySet()) {
+                        writer.deleteDocuments(new BooleanQuery.Builder()
+                                .add(new TermQuery(new Term(ParsedDocument.FIELDS.SOURCE_FILE, key)), BooleanClause.Occur.FILTER)
+                                .add(LongPoint.newRangeQuery(ParsedDocument.FIELDS.GENERATION, Long.MIN_VALUE, generation - 1),
+                                        BooleanClause.Occur.FILTER)
+                                .build());
+                    }
+
+                    //delete the documents of the removed files
+                    for (String key : removed) {
+                        writer.deleteDocuments(new Term(ParsedDocument.FIELDS.SOURCE_FILE, key));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            parsers.shutdownNow();
+            indexers.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            rollback();
+            throw asIOException(failure.get());
+        }
+
+        //indexer commit and resource release: the commit is marked as the final one of the run
+        final long[] shardDocs = new long[shards];
+        long numDocs = 0;
+        for (int s = 0; s < shards; s++) {
+            commitFinal(writers[s], analyzer);
+            if (snapshots != null) {
+                releaseSnapshots(writers[s], snapshots, versions);
+            }
+            shardDocs[s] = writers[s].getDocStats().numDocs;
+            numDocs += shardDocs[s];
+            writers[s].close();
+        }
+        writers = null;
+
+        if (hitSidecar) {
+            for (int s = 0; s < shards; s++) {
+                HitSidecar.write(shards == 1 ? indexDir : indexDir.resolve(ShardManifest.directory(s)));
+            }
+        }
+
+        //the shard layout is recorded only once every shard has been committed, and only then the shards of the
+        //previous layout are deleted
+        if (shards > 1) {
+            new ShardManifest(shardDocs).write(indexDir);
+        }
+        if (mode == IndexWriterConfig.OpenMode.CREATE) {
+            deleteShards(dir, layout);
+        }
+
+        for (Variant v : variants) {
+            commitFinal(v.writer, v.analyzer);
+            v.writer.close();
+            v.writer = null;
+
+            if (hitSidecar) {
+                HitSidecar.write(v.indexDir);
+            }
+        }
+
+        //the manifest is updated only once the index has been committed
+        for (Map.Entry<String, IndexManifest.Stamp> e : changed.entrySet()) {
+            manifest.put(e.getKey(), e.getValue());
+        }
+        removed.forEach(manifest::remove);
+        manifest.setGeneration(generation);
+        manifest.write(indexDir);
+
+        //the new build is searched from now on, and the previous ones are deleted once they are no longer searched
+        if (versions != null) {
+            if (!indexDir.getFileName().toString().equals(current)) {
+                versions.publish(indexDir);
+                System.out.printf("Index build %s published.%n", indexDir.getFileName());
+            }
+            versions.collect();
+        }
+
+        if (numDocs != expectedDocs) {
+            System.out.printf("Expected to index %d documents; %d indexed instead.%n", expectedDocs, numDocs);
+        }
+
+        if (upsert) {
+            System.out.printf("%d unchanged file(s) skipped, %d removed file(s) deleted from the index.%n",
+                    files.size() - changed.size(), removed.size());
+        }
+
+        final long elapsed = System.currentTimeMillis() - start;
+        System.out.printf("%d document(s) (%d files, %d Mbytes) indexed in %d seconds.%n", docsCount.get(),
+                filesCount.get(), bytesCount.get() / MBYTE, elapsed / 1000);
+
+        stats.write(indexDir, docsCount.get(), filesCount.get(), bytesCount.get(), elapsed);
+        System.out.printf("Indexing statistics written to %s (times summed over the threads):%n%s",
+                indexDir.resolve(IndexingStats.FILE_NAME), stats);
+
+        System.out.printf("Index size with schema profile %s: %d Mbytes.%n", profile, indexSize(indexDir) / MBYTE);
+
+        if (shards > 1) {
+            for (int s = 0; s < shards; s++) {
+                System.out.printf("Shard %d: %d document(s).%n", s, shardDocs[s]);
+            }
+        }
+
+        for (Variant v : variants) {
+            System.out.printf("Index variant %s: %d Mbytes.%n", v.indexDir, indexSize(v.indexDir) / MBYTE);
+        }
+
+        System.out.printf("#### Indexing complete ####%n");
+    }
+
+    /**
+     * Sets the number of shards of the index. With more than one shard, the index directory contains an independent
+     * index for every shard, each written by its own {@link IndexWriter}, and a {@link ShardManifest} describing them;
+     * every document is routed to a shard by the hash of its identifier. The number of shards of an existing index
+     * can only be changed by rebuilding it from scratch, and a sharded index cannot be indexed with checkpoints.
+     *
+     * @param shards the number of shards.
+     * @throws IllegalArgumentException if {@code shards} is less than 1.
+     */
+    public void setShards(final int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be at least 1.");
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * Deletes the shards of the previous index no longer used once it has been rebuilt from scratch, possibly with a
+     * different number of shards. The shards still used have been replaced by their own writers.
+     *
+     * @param dir    the index directory.
+     * @param layout the layout of the previous index, {@code null} if it was not sharded.
+     * @throws IOException if the shards cannot be deleted.
+     */
+    private void deleteShards(final Directory dir, final ShardManifest layout) throws IOException {
+
+        if (shards == 1) {
+            Files.deleteIfExists(indexDir.resolve(ShardManifest.FILE_NAME));
+        }
+
+        if (layout != null) {
+            final List<String> previous = layout.getDirectories();
+            for (String d : previous.subList(shards == 1 ? 0 : Math.min(shards, previous.size()), previous.size())) {
+                IOUtils.rm(indexDir.resolve(d));
+            }
+        }
+
+        //the files of a previous index with a single shard are not replaced by a sharded one
+        if (shards > 1 && layout == null) {
+            for (String f : dir.listAll()) {
+                if (f.startsWith(IndexFileNames.SEGMENTS) || f.startsWith("_")) {
+                    dir.deleteFile(f);
+                }
+            }
+            HitSidecar.delete(indexDir);
+        }
+    }
+
+    /**
+     * Returns the generation recorded by the last commit of the index, or of any of its shards.
+     *
+     * @param dir    the index directory.
+     * @param layout the layout of the index, {@code null} if it is not sharded.
+     * @return the generation of the last commit, {@code 0} if there is no index.
+     * @throws IOException if the last commit of the index or of a shard cannot be read.
+     */
+    private long lastGeneration(final Directory dir, final ShardManifest layout) throws IOException {
+
+        long last = IndexCheckpoint.generation(dir);
+
+        if (layout != null) {
+            for (String d : layout.getDirectories()) {
+                final Path shardDir = indexDir.resolve(d);
+                if (Files.isDirectory(shardDir)) {
+                    try (Directory sd = FSDirectory.open(shardDir)) {
+                        last = Math.max(last, IndexCheckpoint.generation(sd));
+                    }
+                }
+            }
+        }
+
+        return last;
+    }
+
+    /**
+     * Rolls back every open index writer, discarding the changes of the current run.
+     *
+     * @throws IOException if an index writer cannot be rolled back.
+     */
+    private void rollback() throws IOException {
+
+        for (IndexWriter w : writers) {
+            if (w != null) {
+                w.rollback();
+            }
+        }
+        writers = null;
+
+        for (Variant v : variants) {
+            if (v.writer != null) {
+                v.writer.rollback();
+                v.writer = null;
+            }
+        }
+    }
+
+    /**
+     * Releases the snapshots of the commits of a versioned index which are no longer held by any searcher, and deletes
+     * their files.
+     *
+     * @param w         the writer of the index.
+     * @param snapshots the snapshots of the index.
+     * @param versions  the builds of the index.
+     * @throws IOException if the snapshots cannot be released.
+     */
+    private void releaseSnapshots(final IndexWriter w, final PersistentSnapshotDeletionPolicy snapshots,
+                                  final IndexVersions versions) throws IOException {
+
+        final Set<Long> leased = versions.leased(indexDir.getFileName().toString());
+        for (IndexCommit c : snapshots.getSnapshots()) {
+            if (!leased.contains(c.getGeneration())) {
+                snapshots.release(c);
+            }
+        }
+        w.deleteUnusedFiles();
+
+        if (!leased.isEmpty()) {
+            System.out.printf("%d commit(s) of build %s kept for the searchers holding them.%n",
+                    snapshots.getSnapshotCount(), indexDir.getFileName());
+        }
+    }
+
+    /**
+     * Sets whether the index is versioned. The index directory of a versioned index contains a directory for every
+     * build of the index and a pointer to the current one (see {@link IndexVersions}): a rebuild from scratch is
+     * written into a new build, which replaces the current one atomically once it is complete, so that the index is
+     * searched while it is rebuilt. An incremental run updates the current build, keeping the commits still read by
+     * the searchers. The previous builds are deleted as soon as no searcher holds them. A versioned index cannot be
+     * sharded.
+     *
+     * @param versioned whether the index is versioned.
+     */
+    public void setVersioned(final boolean versioned) {
+        this.versioned = versioned;
+    }
+
+    /**
+     * Sets the number of segments the index (each shard and variant) is force-merged into, after expunging the
+     * deleted documents, before the final commit of every run. A read-only index merged into a single segment is
+     * searched with better cache locality, at the cost of a longer indexing.
+     *
+     * @param finalSegments the number of segments, 0 (the default) for not merging the index.
+     * @throws IllegalArgumentException if {@code finalSegments} is negative.
+     */
+    public void setFinalSegments(final int finalSegments) {
+        if (finalSegments < 0) {
+            throw new IllegalArgumentException("The number of final segments cannot be negative.");
+        }
+        this.finalSegments = finalSegments;
+    }
+
+    /**
+     * Sets whether the sidecar file mapping every document to its identifier, stance and sentences (see
+     * {@link HitSidecar}) is written after the final commit, so that the runs are written without reading the index.
+     *
+     * @param hitSidecar whether the sidecar file is written (the default).
+     */
+    public void setHitSidecar(final boolean hitSidecar) {
+        this.hitSidecar = hitSidecar;
+    }
+
+    /**
+     * Finalizes an index and commits it as the final commit of the run: the index is merged into the final number
+     * of segments, if any, and the build metadata (see {@link IndexMetadata}) are recorded in the commit.
+     *
+     * @param w        the writer of the index.
+     * @param analyzer the analyzer of the index.
+     * @throws IOException if the index cannot be merged or committed.
+     */
+    private void commitFinal(final IndexWriter w, final Analyzer analyzer) throws IOException {
+
+        if (finalSegments > 0) {
+            final long mergeStart = System.currentTimeMillis();
+            w.forceMergeDeletes(true);
+            w.forceMerge(finalSegments, true);
+            System.out.printf("Index merged into %d segment(s) in %d seconds.%n", finalSegments,
+                    (System.currentTimeMillis() - mergeStart) / 1000);
+        }
+
+        final Map<String, String> data = new HashMap<>(IndexCheckpoint.complete(generation));
+        data.putAll(IndexMetadata.of(analyzer, similarity, profile));
+
+        //the merges are timed by the merge scheduler, the commit here
+        final long commitStart = System.nanoTime();
+        w.setLiveCommitData(data.entrySet());
+        w.commit();
+        stats.add(IndexingStats.Stage.FLUSH_MERGE, System.nanoTime() - commitStart, 1);
+    }
+
+    /**
+     * Sets how the index is opened. With {@code CREATE} (the default) the index is rebuilt from scratch; with
+     * {@code APPEND} or {@code CREATE_OR_APPEND} only the files that changed since the last indexing (see
+     * {@link IndexManifest}) are indexed again: their documents are upserted by identifier, the documents no longer
+     * contained in them are deleted, as well as the documents of the files that have been removed.
+     *
+     * @param openMode how the index is opened.
+     * @throws NullPointerException if {@code openMode} is {@code null}.
+     */
+    public void setOpenMode(final IndexWriterConfig.OpenMode openMode) {
+        if (openMode == null) {
+            throw new NullPointerException("Open mode cannot be null.");
+        }
+        this.openMode = openMode;
+    }
+
+    /**
+     * Sets the schema profile choosing what is recorded for the text fields of the documents. The default profile
+     * is {@link SchemaProfile#SEARCH_ONLY}.
+     *
+     * @param profile the schema profile.
+     * @throws NullPointerException if {@code profile} is {@code null}.
+     */
+    public void setSchemaProfile(final SchemaProfile profile) {
+        if (profile == null) {
+            throw new NullPointerException("Schema profile cannot be null.");
+        }
+        this.profile = profile;
+    }
+
+    /**
+     * Sets whether the sentiment and readability scores of the conclusions are computed while indexing and stored as
+     * doc values (see {@link TextScores}). The scores are computed by the indexing threads. Enabled by default.
+     *
+     * @param enrichment whether the scores are computed and stored.
+     */
+    public void setEnrichment(final boolean enrichment) {
+        this.enrichment = enrichment;
+    }
+
+    /**
+     * Sets whether the documents are sorted by discussion within the index (see {@link #DISCUSSION_SORT}). The
+     * arguments of the same discussion get adjacent document identifiers, so that their stored fields are compressed
+     * together, grouping by discussion scans contiguous ranges and searches sorted by identifier terminate early.
+     * The sort of an existing index cannot be changed without rebuilding it from scratch.
+     *
+     * @param discussionSort whether the documents are sorted by discussion.
+     */
+    public void setDiscussionSort(final boolean discussionSort) {
+        this.discussionSort = discussionSort;
+    }
+
+    /**
+     * Sets whether the identifiers are written with a bloom filter for every segment (see {@link ToucheCodec}), so
+     * that the upserts of the incremental indexing skip the segments which cannot contain the upserted documents.
+     * Enabled by default; the segments written with and without the bloom filter can be mixed in the same index.
+     *
+     * @param bloomFilter whether the identifiers are written with a bloom filter.
+     */
+    public void setBloomFilter(final boolean bloomFilter) {
+        this.bloomFilter = bloomFilter;
+    }
+
+    /**
+     * Sets the compression mode of the stored fields: {@code BEST_SPEED} (the default) for a faster access to the
+     * stored fields, {@code BEST_COMPRESSION} for a smaller index.
+     *
+     * @param storedFieldsMode the compression mode of the stored fields.
+     * @throws NullPointerException if {@code storedFieldsMode} is {@code null}.
+     */
+    public void setStoredFieldsMode(final Lucene90Codec.Mode storedFieldsMode) {
+        if (storedFieldsMode == null) {
+            throw new NullPointerException("Stored fields mode cannot be null.");
+        }
+        this.storedFieldsMode = storedFieldsMode;
+    }
+
+    /**
+     * Sets whether the segments are written as compound files (the default), i.e. as a single file each, which
+     * keeps the number of open files low. Without compound files the files of a segment are read directly, which
+     * avoids an indirection and lets the segments be merged without rewriting a compound file.
+     *
+     * @param compoundFile whether the segments are written as compound files.
+     */
+    public void setCompoundFile(final boolean compoundFile) {
+        this.compoundFile = compoundFile;
+    }
+
+    /**
+     * Sets the postings format of a field, e.g. {@code FST50} for holding the terms dictionary of a small field in
+     * memory. The identifiers are still wrapped in a bloom filter, if enabled (see {@link #setBloomFilter(boolean)}).
+     *
+     * @param field the name of the field.
+     * @param name  the name of the postings format, {@code null} for the default one.
+     * @throws NullPointerException     if {@code field} is {@code null}.
+     * @throws IllegalArgumentException if there is no postings format with the given name.
+     */
+    public void setPostingsFormat(final String field, final String name) {
+        if (field == null) {
+            throw new NullPointerException("Field cannot be null.");
+        }
+        if (name == null) {
+            postingsFormats.remove(field);
+        } else {
+            postingsFormats.put(field, PostingsFormat.forName(name));
+        }
+    }
+
+    /**
+     * Returns the per-stage counters and timers of the last run, also written in the index directory at the end of
+     * the run (see {@link IndexingStats}).
+     *
+     * @return the statistics of the last run.
+     */
+    public IndexingStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the size in bytes of the files in an index directory, including the ones of its shards.
+     *
+     * @param indexDir the index directory.
+     * @return the size in bytes of the index.
+     * @throws IOException if the index directory cannot be read.
+     */
+    public static long indexSize(final Path indexDir) throws IOException {
+        long size = 0;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(indexDir)) {
+            for (Path p : ds) {
+                if (Files.isRegularFile(p)) {
+                    size += Files.size(p);
+                } else if (Files.isDirectory(p)) {
+                    size += indexSize(p);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Enables the pre-parsed corpus cache: every collection file is parsed only once into a compact binary file of
+     * the cache directory (see {@link ToucheCacheParser}), from which it is indexed by this and the following runs
+     * without any CSV or JSON parsing. The cache of a file is rebuilt as soon as the file changes. The source texts
+     * are streamed from the cache into the index, so that the memory held by the queued documents does not depend on
+     * the length of their texts, unless the body is stored or analyzed again for the variants of the index.
+     *
+     * @param cachePath the directory of the corpus cache.
+     * @throws NullPointerException     if {@code cachePath} is {@code null}.
+     * @throws IllegalArgumentException if {@code cachePath} is not a writable directory.
+     */
+    public void setCorpusCache(final String cachePath) {
+
+        if (cachePath == null) {
+            throw new NullPointerException("Cache path cannot be null.");
+        }
+
+        if (cachePath.isEmpty()) {
+            throw new IllegalArgumentException("Cache path cannot be empty.");
+        }
+
+        final Path cacheDir = Paths.get(cachePath);
+
+        try {
+            Files.createDirectories(cacheDir);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(String.format("Unable to create directory %s: %s.",
+                    cacheDir.toAbsolutePath(), e.getMessage()), e);
+        }
+
+        if (!Files.isWritable(cacheDir)) {
+            throw new IllegalArgumentException(String.format("Cache directory %s cannot be written.",
+                    cacheDir.toAbsolutePath()));
+        }
+
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * Enables periodic commits of the index while indexing. Every commit records in its user data the progress of
+     * the indexing (see {@link IndexCheckpoint}), so that a run which is interrupted is resumed from its last
+     * checkpoint by the next call to {@link #index()}, instead of starting over.
+     *
+     * @param docs    the number of indexed documents after which the index is committed, 0 for never.
+     * @param seconds the number of seconds after which the index is committed, 0 for never.
+     * @throws IllegalArgumentException if {@code docs} and/or {@code seconds} are less than zero.
+     */
+    public void setCheckpointInterval(final long docs, final long seconds) {
+        if (docs < 0) {
+            throw new IllegalArgumentException("The number of documents between checkpoints cannot be less than zero.");
+        }
+        if (seconds < 0) {
+            throw new IllegalArgumentException("The number of seconds between checkpoints cannot be less than zero.");
+        }
+        this.checkpointDocs = docs;
+        this.checkpointSeconds = seconds;
+    }
+
+    /**
+     * Creates the configuration of the index writer.
+     *
+     * @param analyzer the analyzer of the index.
+     * @param mode     how the index is opened.
+     * @return the configuration of the index writer.
+     */
+    private IndexWriterConfig createWriterConfig(final Analyzer analyzer, final IndexWriterConfig.OpenMode mode) {
+
+        //setting up the Lucene IndexWriter object: the analysis and the merges are timed
+        final IndexWriterConfig iwc = new IndexWriterConfig(stats.timed(analyzer));
+        iwc.setMergeScheduler(stats.mergeScheduler());
+        iwc.setSimilarity(similarity);
+        iwc.setRAMBufferSizeMB(ramBufferSizeMB);
+        iwc.setOpenMode(mode);
+        iwc.setCommitOnClose(true);
+        iwc.setUseCompoundFile(compoundFile);
+        iwc.setCodec(new ToucheCodec(storedFieldsMode, bloomFilter, postingsFormats));
+
+        //the merged segments are not written as compound files either
+        if (!compoundFile) {
+            iwc.getMergePolicy().setNoCFSRatio(0.0);
+        }
+
+        if (discussionSort) {
+            iwc.setIndexSort(DISCUSSION_SORT);
+        }
+
+        return iwc;
+    }
+
+    /**
+     * Returns the key of a collection file, i.e. its path relative to the collection directory.
+     *
+     * @param file the collection file.
+     * @return the key of the file.
+     */
+    private String fileKey(final Path file) {
+        return docsDir.relativize(file).toString().replace('\\', '/');
+    }
+
+    /**
+     * Registers a file, or a split of it, in the progress of the current run.
+     *
+     * @param key the key of the file or split.
+     * @return the progress of the split, {@code null} if checkpoints are disabled or the run resumes from a checkpoint
+     * where the split has been completely indexed.
+     */
+    private IndexCheckpoint.Unit unit(final String key) {
+        return checkpoint == null ? null : checkpoint.unit(key);
+    }
+
+    /**
+     * Creates the parser of a collection file, or of a split of it.
+     *
+     * @param unit the progress of the file or split, {@code null} if checkpoints are disabled.
+     * @param in   the reader to the documents to be parsed.
+     * @return the parser of the documents still to be indexed.
+     * @throws IOException if the part already indexed by an interrupted run cannot be skipped.
+     */
+    private DocumentParser parser(final IndexCheckpoint.Unit unit, final Reader in) throws IOException {
+        final Reader timed = stats.timed(in);
+        return DocumentParser.create(dpCls, unit == null ? timed : unit.skip(timed), INDEXED_FIELDS);
+    }
+
+    /**
+     * Commits the index as a checkpoint, if enough documents have been indexed or enough time has passed since the
+     * last one. While a thread commits, the others keep indexing.
+     *
+     * @throws IOException if the index cannot be committed.
+     */
+    private void checkpoint() throws IOException {
+
+        final long docs = checkpointCount.incrementAndGet();
+        final long now = System.currentTimeMillis();
+
+        if ((checkpointDocs == 0 || docs < checkpointDocs)
+                && (checkpointSeconds == 0 || now - checkpointTime < checkpointSeconds * 1000)) {
+            return;
+        }
+
+        if (!checkpointLock.tryLock()) {
+            return;
+        }
+
+        try {
+            checkpointCount.set(0);
+            checkpointTime = now;
+
+            //checkpoints are taken only on indexes with a single shard
+            final long commitStart = System.nanoTime();
+            writers[0].setLiveCommitData(checkpoint.snapshot().entrySet());
+            writers[0].commit();
+            stats.add(IndexingStats.Stage.FLUSH_MERGE, System.nanoTime() - commitStart, 1);
+
+            System.out.printf("Checkpoint committed after %d document(s) in %d seconds.%n", docsCount.get(),
+                    (System.currentTimeMillis() - start) / 1000);
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    /**
+     * Parses a collection file, or a split of it, and puts its documents in the queue. It stops as soon as a failure
+     * is recorded, and the parser is closed in any case.
+     *
+     * @param key     the key of the collection file.
+     * @param unit    the progress of the file or split, {@code null} if checkpoints are disabled.
+     * @param dp      the parser of the documents.
+     * @param queue   the queue shared with the indexing threads.
+     * @param failure the first failure occurred while indexing, if any.
+     * @throws InterruptedException if the thread is interrupted while waiting for space in the queue.
+     * @throws IOException          if the parser cannot be closed.
+     */
+    private void produce(final String key, final IndexCheckpoint.Unit unit, final DocumentParser dp,
+                         final BlockingQueue<QueuedDocument> queue, final AtomicReference<Throwable> failure)
+            throws InterruptedException, IOException {
+
+        try (dp) {
+            long docs = 0;
+            for (ParsedDocument pd : dp) {
+                if (failure.get() != null) {
+                    pd.discard();
+                    return;
+                }
+                final long position = unit == null ? -1 : unit.parsed(dp.position());
+
+                //a parser blocked on a full queue means that the indexing threads are behind
+                final long t = System.nanoTime();
+                try {
+                    queue.put(new QueuedDocument(pd, key, unit, position));
+                } catch (InterruptedException e) {
+                    pd.discard();
+                    throw e;
+                }
+                stats.add(IndexingStats.Stage.PARSER_BLOCKED, System.nanoTime() - t, 0);
+                docs++;
+            }
+            stats.parsed(dp, docs);
+        }
+
+        if (unit != null) {
+            unit.finish();
+        }
+    }
+
+    /**
+     * Takes the parsed documents from the queue and adds them to the index until the end marker is found.
+     * <p>
+     * After a failure the queue is still drained, so that the parsing threads are never blocked on a full queue, and
+     * the streamed texts of the documents which are not indexed are released.
+     *
+     * @param queue   the queue shared with the parsing threads.
+     * @param failure the first failure occurred while indexing, if any.
+     * @return always {@code null}.
+     * @throws InterruptedException if the thread is interrupted while waiting for documents.
+     */
+    private Void consume(final BlockingQueue<QueuedDocument> queue, final AtomicReference<Throwable> failure)
+            throws InterruptedException {
+
+        QueuedDocument qd;
+        long t = System.nanoTime();
+        while ((qd = queue.take()) != QueuedDocument.END) {
+
+            //an indexer waiting for documents means that the parsing threads are behind
+            long now = System.nanoTime();
+            stats.add(IndexingStats.Stage.INDEXER_IDLE, now - t, 0);
+            t = now;
+
+            if (failure.get() != null) {
+                discard(qd.document, failure);
+                continue;
+            }
+
+            try {
+                final Document doc = createDocument(qd.document);
+
+                now = System.nanoTime();
+                stats.add(IndexingStats.Stage.DOCUMENT, now - t, 1);
+                t = now;
+
+                //record where the document comes from, for deleting it when it is removed from the collection
+                doc.add(new StringField(ParsedDocument.FIELDS.SOURCE_FILE, qd.file, Field.Store.NO));
+                doc.add(new LongPoint(ParsedDocument.FIELDS.GENERATION, generation));
+
+                //every indexing thread writes to the shard of the document, so that the shards grow in parallel
+                final IndexWriter writer = writers[ShardManifest.shardOf(qd.document.getIdentifier(), writers.length)];
+
+                if (upsert) {
+                    writer.updateDocument(new Term(ParsedDocument.FIELDS.ID, qd.document.getIdentifier()), doc);
+                } else {
+                    writer.addDocument(doc); //index the document
+                }
+
+                //the same document is analyzed again for every variant of the index
+                for (Variant v : variants) {
+                    v.writer.addDocument(doc);
+                }
+
+                now = System.nanoTime();
+                stats.add(IndexingStats.Stage.INDEX, now - t, 1);
+                t = now;
+
+                if (qd.unit != null) {
+                    qd.unit.indexed(qd.position);
+                    checkpoint();
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+                //the streamed text may not have been read, if the document failed before its body was analyzed
+                discard(qd.document, failure);
+                continue;
+            } finally {
+                t = System.nanoTime();
+            }
+
+            final long docs = docsCount.incrementAndGet();
+
+            // print progress every 10000 indexed documents, only for debug purpose
+            if (docs % 10000 == 0) {
+                final long elapsed = System.currentTimeMillis() - start;
+                System.out.printf("%d document(s) (%d files, %d Mbytes) indexed in %d seconds (%s).%n",
+                        docs, filesCount.get(), bytesCount.get() / MBYTE, elapsed / 1000,
+                        stats.throughput(docs, elapsed));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Releases the streamed text of a document which is not indexed, recording the failure if any.
+     *
+     * @param pd      the parsed document.
+     * @param failure the first failure occurred while indexing, if any.
+     */
+    private static void discard(final ParsedDocument pd, final AtomicReference<Throwable> failure) {
+        try {
+            pd.discard();
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * Creates the Lucene {@code Document} for a parsed document.
+     *
+     * @param pd the parsed document.
+     * @return the Lucene {@code Document} to be indexed.
+     * @throws IOException if the text of the document cannot be streamed.
+     */
+    private Document createDocument(final ParsedDocument pd) throws IOException {
+
+        //create the Lucene Document
+        final Document doc = new Document();
+
+        //add the document identifier
+        doc.add(new StringField(ParsedDocument.FIELDS.ID, pd.getIdentifier(), Field.Store.YES));
+        doc.add(new SortedDocValuesField(ParsedDocument.FIELDS.ID, new BytesRef(pd.getIdentifier())));
+
+        //add the document text: a streamed text is analyzed while it is read, but it can be neither stored nor
+        //analyzed again for the variants of the index
+        if (pd.isSourceTextStreamed() && variants.isEmpty() && !profile.bodyType().stored()) {
+            doc.add(new BodyField(pd.getSourceTextReader(), profile));
+        } else {
+            doc.add(new BodyField(pd.getSourceText(), profile));
+        }
+
+        //add additional body correlated information (Conclusion)
+        doc.add(new BodyCorrelatedField(ParsedDocument.FIELDS.CONCLUSION, pd.getConclusion(), profile));
+
+        //add additional body correlated information (Discussion Title)
+        doc.add(new BodyCorrelatedField(ParsedDocument.FIELDS.DISCUSSION_TITLE, pd.getDiscussionTitle(), profile));
+
+        //add additional body correlated information (Source Title)
+        doc.add(new BodyCorrelatedField(ParsedDocument.FIELDS.SOURCE_TITLE, pd.getSourceTitle(), profile));
+
+        //add document Stance
+        doc.add(new IDKeyField(ParsedDocument.FIELDS.STANCE, pd.getStance()));
+        doc.add(new SortedDocValuesField(ParsedDocument.FIELDS.STANCE, new BytesRef(pd.getStance())));
+
+        //add the sentiment and readability scores of the conclusion, used for re-ranking
+        if (enrichment) {
+            final String conclusion = pd.getConclusion();
+            doc.add(new FloatDocValuesField(ParsedDocument.FIELDS.SENTIMENT,
+                    TextScores.getDocumentSentimentScore(conclusion == null ? "" : conclusion)));
+            doc.add(new FloatDocValuesField(ParsedDocument.FIELDS.READABILITY,
+                    TextScores.getDocumentReadabilityScore(conclusion)));
+        }
+
+        //add document sentences id, in their original order and compactly encoded against the document identifier
+        ParsedDocument.Sentence[] sentences = pd.getSentences();
+        final String[] sentenceIDs = new String[sentences.length];
+        for (int i = 0; i < sentences.length; i++) {
+            sentenceIDs[i] = sentences[i].getID();
+        }
+        doc.add(new BinaryDocValuesField(ParsedDocument.FIELDS.SENTENCES,
+                SentenceIDs.encode(pd.getIdentifier(), sentenceIDs)));
+
+        return doc;
+    }
+
+    /**
+     * Waits for the completion of a task, recording its failure if any.
+     *
+     * @param task    the task to wait for.
+     * @param failure the first failure occurred while indexing, if any.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    private static void await(final Future<?> task, final AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        }
+    }
+
+    /**
+     * Converts a failure occurred in an indexing thread into the exception thrown by {@link #index()}.
+     *
+     * @param t the failure.
+     * @return the exception to be thrown.
+     */
+    private static IOException asIOException(final Throwable t) {
+        if (t instanceof IOException) {
+            return (IOException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IOException(String.format("Unable to index the collection: %s.", t.getMessage()), t);
+    }
+
+    /**
+     * A variant of the index, built with its own analyzer
+     */
+    private static final class Variant {
+
+        /**
+         * The analyzer of the variant
+         */
+        private final Analyzer analyzer;
+
+        /**
+         * The directory where the variant is stored
+         */
+        private final Path indexDir;
+
+        /**
+         * The index writer of the variant, open while indexing
+         */
+        private IndexWriter writer;
+
+        /**
+         * Creates a new variant
+         *
+         * @param analyzer the analyzer of the variant
+         * @param indexDir the directory where the variant is stored
+         */
+        private Variant(final Analyzer analyzer, final Path indexDir) {
+            this.analyzer = analyzer;
+            this.indexDir = indexDir;
+        }
+    }
+
+    /**
+     * A parsed document waiting in the queue for being indexed
+     */
+    private static final class QueuedDocument {
+
+        /**
+         * The marker put in the queue for stopping an indexing thread
+         */
+        private static final QueuedDocument END = new QueuedDocument(null, null, null, -1);
+
+        /**
+         * The parsed document
+         */
+        private final ParsedDocument document;
+
+        /**
+         * The key of the collection file containing the document
+         */
+        private final String file;
+
+        /**
+         * The progress of the file or split containing the document, {@code null} if checkpoints are disabled
+         */
+        private final IndexCheckpoint.Unit unit;
+
+        /**
+         * The position of the document in the file or split
+         */
+        private final long position;
+
+        /**
+         * Creates a new queued document
+         *
+         * @param document the parsed document
+         * @param file     the key of the collection file containing the document
+         * @param unit     the progress of the file or split containing the document
+         * @param position the position of the document in the file or split
+         */
+        private QueuedDocument(final ParsedDocument document, final String file, final IndexCheckpoint.Unit unit,
+                               final long position) {
+            this.document = document;
+            this.file = file;
+            this.unit = unit;
+            this.position = position;
+        }
+    }
+
+    /**
+     * ONLY FOR DEBUGGING PURPOSE
+     *
+     * @param args command line arguments.
+     * @throws Exception if something goes wrong while indexing.
+     */
+    public static void main(String[] args) throws Exception {
+
+        final int ramBuffer = 256;
+        final String indexPath = Constants.manuelIndexPath;
+        final String docsPath = Constants.manuelDocsPath;
+
+        final String extension = "csv";
+        final int expectedDocs = 365408;
+        final String charsetName = "ISO-8859-1";
+
+        final Analyzer a = new ToucheAnalyzer();
+
+        final Similarity sim = new LMDirichletSimilarity(1800);
+
+        ToucheIndexer i = new ToucheIndexer(a, sim, ramBuffer, indexPath, docsPath, extension,
+                charsetName, expectedDocs, ToucheStreamParser.class);
+
+        i.setParsingThreads(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+        i.setIndexingThreads(Runtime.getRuntime().availableProcessors());
+        i.setCheckpointInterval(50000, 600);
+        i.setFinalSegments(1);
 
         i.index();
 
@@ -0,0 +1,377 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package index;
+
+import analyze.ToucheAnalyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ReferenceManager;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
+import parse.ToucheStreamParser;
+import utils.Constants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-running indexing service, which keeps an index up to date with its collection directory.
+ * <p>
+ * The service watches the collection directory and, as soon as the collection files stop changing, runs the
+ * {@link ToucheIndexer} incrementally, so that only the new or changed files are indexed again and the documents of
+ * the removed files are deleted. The searches go through a {@link SearcherManager}, which is refreshed after every
+ * indexing run and periodically, so that they see the new arguments within seconds without reopening the index.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public class ToucheIndexingService implements Closeable {
+
+    /**
+     * The time without changes to the collection after which the changes are indexed, in milliseconds: a file being
+     * copied into the collection is usually indexed once, when it is complete
+     */
+    private static final long QUIET_MILLIS = 1000;
+
+    /**
+     * The indexer of the collection
+     */
+    private final ToucheIndexer indexer;
+
+    /**
+     * The interval between two refreshes of the searcher, in milliseconds
+     */
+    private final long refreshMillis;
+
+    /**
+     * The watcher of the collection directory
+     */
+    private WatchService watcher;
+
+    /**
+     * The directory of the index, searched through the manager
+     */
+    private Directory dir;
+
+    /**
+     * The manager of the searchers of the index
+     */
+    private SearcherManager manager;
+
+    /**
+     * The thread indexing the changes of the collection
+     */
+    private Thread ingester;
+
+    /**
+     * The thread refreshing the searcher
+     */
+    private ScheduledExecutorService refresher;
+
+    /**
+     * Creates a new indexing service.
+     *
+     * @param indexer       the indexer of the collection.
+     * @param refreshMillis the interval between two refreshes of the searcher, in milliseconds.
+     * @throws NullPointerException     if {@code indexer} is {@code null}.
+     * @throws IllegalArgumentException if {@code refreshMillis} is less than or equal to zero.
+     */
+    public ToucheIndexingService(final ToucheIndexer indexer, final long refreshMillis) {
+
+        if (indexer == null) {
+            throw new NullPointerException("Indexer cannot be null.");
+        }
+
+        if (refreshMillis <= 0) {
+            throw new IllegalArgumentException("The refresh interval cannot be less than or equal to zero.");
+        }
+
+        this.indexer = indexer;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * Starts the service: the changes made to the collection since the last indexing are indexed, then the collection
+     * directory is watched.
+     *
+     * @throws IOException           if the collection cannot be indexed or watched.
+     * @throws IllegalStateException if the service has already been started or the index is sharded or
+     *                               versioned.
+     */
+    public synchronized void start() throws IOException {
+
+        if (manager != null) {
+            throw new IllegalStateException("The indexing service has already been started.");
+        }
+
+        if (indexer.getShards() > 1) {
+            throw new IllegalStateException("The indexing service cannot maintain a sharded index.");
+        }
+
+        if (indexer.isVersioned()) {
+            throw new IllegalStateException("The indexing service cannot maintain a versioned index.");
+        }
+
+        //catch up with the changes made while the service was not running
+        indexer.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        indexer.index();
+
+        //the resources created so far are released if the service cannot be started
+        try {
+            final Similarity similarity = indexer.getSimilarity();
+            dir = FSDirectory.open(indexer.getIndexDir());
+            manager = new SearcherManager(dir, new SearcherFactory() {
+                @Override
+                public IndexSearcher newSearcher(final IndexReader reader, final IndexReader previousReader) {
+                    final IndexSearcher searcher = new IndexSearcher(reader);
+                    searcher.setSimilarity(similarity);
+                    return searcher;
+                }
+            });
+
+            manager.addListener(new ReferenceManager.RefreshListener() {
+                @Override
+                public void beforeRefresh() {
+                }
+
+                @Override
+                public void afterRefresh(final boolean didRefresh) throws IOException {
+                    if (didRefresh) {
+                        final IndexSearcher searcher = manager.acquire();
+                        try {
+                            System.out.printf("Searcher refreshed: %d document(s).%n",
+                                    searcher.getIndexReader().numDocs());
+                        } finally {
+                            manager.release(searcher);
+                        }
+                    }
+                }
+            });
+
+            watcher = FileSystems.getDefault().newWatchService();
+            register(indexer.getDocsDir());
+
+            ingester = new Thread(this::ingest, "touche-ingester");
+            ingester.start();
+
+            refresher = Executors.newSingleThreadScheduledExecutor();
+            refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        } catch (IOException | RuntimeException e) {
+            try {
+                stop();
+            } catch (IOException | RuntimeException ce) {
+                e.addSuppressed(ce);
+            }
+            throw e;
+        }
+
+        System.out.printf("Watching %s for changes.%n", indexer.getDocsDir().toAbsolutePath());
+    }
+
+    /**
+     * Returns a searcher over the latest refreshed version of the index. It must be released with
+     * {@link #release(IndexSearcher)} once the search is over.
+     *
+     * @return a searcher over the index.
+     * @throws IOException           if the searcher cannot be acquired.
+     * @throws IllegalStateException if the service has not been started.
+     */
+    public IndexSearcher acquire() throws IOException {
+        if (manager == null) {
+            throw new IllegalStateException("The indexing service has not been started.");
+        }
+        return manager.acquire();
+    }
+
+    /**
+     * Releases a searcher returned by {@link #acquire()}.
+     *
+     * @param searcher the searcher.
+     * @throws IOException if the searcher cannot be released.
+     */
+    public void release(final IndexSearcher searcher) throws IOException {
+        manager.release(searcher);
+    }
+
+    /**
+     * Stops the service. An indexing run in progress is completed first.
+     *
+     * @throws IOException if the index cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        stop();
+    }
+
+    /**
+     * Stops the threads of the service and releases the searchers and the index, whichever of them have been created.
+     * The service can then be started again.
+     *
+     * @throws IOException if the watcher, the searchers or the index cannot be closed.
+     */
+    private void stop() throws IOException {
+
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+
+        try {
+            //closing the watcher wakes up the ingesting thread, which then terminates
+            IOUtils.close(watcher);
+        } finally {
+            try {
+                if (ingester != null) {
+                    ingester.join();
+                }
+                if (refresher != null) {
+                    refresher.awaitTermination(1, TimeUnit.MINUTES);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            try {
+                IOUtils.close(manager, dir);
+            } finally {
+                watcher = null;
+                ingester = null;
+                refresher = null;
+                manager = null;
+                dir = null;
+            }
+        }
+    }
+
+    /**
+     * Watches a directory of the collection and all its subdirectories.
+     *
+     * @param dir the directory.
+     * @throws IOException if the directory cannot be watched.
+     */
+    private void register(final Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+                d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Waits for changes to the collection and indexes them, until the watcher is closed.
+     */
+    private void ingest() {
+
+        while (true) {
+            try {
+                boolean changed = drain(watcher.take());
+
+                //wait for the collection to be quiet, so that a burst of changes is indexed in a single run
+                WatchKey key;
+                while ((key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key);
+                }
+
+                if (changed) {
+                    indexer.index();
+                    refresh();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                //the run has been rolled back: the files will be indexed again at the next change
+                System.out.printf("Unable to index the changes of the collection: %s.%n", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Consumes the events of a watched directory.
+     *
+     * @param key the key of the watched directory.
+     * @return {@code true} if a collection file may have been created, modified or deleted, {@code false} otherwise.
+     * @throws IOException if a new directory cannot be watched.
+     */
+    private boolean drain(final WatchKey key) throws IOException {
+
+        boolean changed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+
+            //some events have been lost: let the indexer find out what changed
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+                continue;
+            }
+
+            final Path child = ((Path) key.watchable()).resolve((Path) event.context());
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                register(child);
+                changed = true;
+            } else if (indexer.isCollectionFile(child)) {
+                changed = true;
+            }
+        }
+
+        key.reset();
+
+        return changed;
+    }
+
+    /**
+     * Refreshes the searcher, if the index has been committed since the last refresh.
+     */
+    private void refresh() {
+        try {
+            manager.maybeRefresh();
+        } catch (IOException e) {
+            System.out.printf("Unable to refresh the searcher: %s.%n", e.getMessage());
+        }
+    }
+
+    /**
+     * ONLY FOR DEBUGGING PURPOSE: keeps the index up to date until a line is entered.
+     *
+     * @param args command line arguments.
+     * @throws Exception if something goes wrong while indexing.
+     */
+    public static void main(String[] args) throws Exception {
+
+        final ToucheIndexer indexer = new ToucheIndexer(new ToucheAnalyzer(), new BM25Similarity(), 256,
+                Constants.manuelIndexPath, Constants.manuelDocsPath, "csv", "ISO-8859-1", 365408,
+                ToucheStreamParser.class);
+
+        try (ToucheIndexingService service = new ToucheIndexingService(indexer, 5000)) {
+            service.start();
+            System.in.read();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package parse;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens the collection files, which may be gzip-compressed.
+ * <p>
+ * A compressed file is decompressed by a dedicated thread, which stays a few chunks ahead of the parser through a
+ * bounded queue: decompressing and parsing overlap, and the collection never has to be decompressed to disk. A gzip
+ * file made of several concatenated members, as written by block-compressing tools such as {@code bgzip} or
+ * {@code pigz}, is read as a whole.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public final class CompressedCorpus {
+
+    /**
+     * The extension of the gzip-compressed files, added to the extension of the collection files
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+
+    /**
+     * The size in bytes of the buffers of the compressed file
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The size in bytes of the decompressed chunks handed to the parser
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * The maximum number of decompressed chunks waiting for the parser
+     */
+    private static final int CHUNKS = 8;
+
+    /**
+     * This class cannot be instantiated
+     */
+    private CompressedCorpus() {
+        throw new AssertionError("CompressedCorpus cannot be instantiated.");
+    }
+
+    /**
+     * Checks whether a collection file is compressed.
+     *
+     * @param file the collection file.
+     * @return {@code true} if the file is gzip-compressed, {@code false} otherwise.
+     */
+    public static boolean isCompressed(final Path file) {
+        return file.getFileName().toString().endsWith(GZIP_EXTENSION);
+    }
+
+    /**
+     * Checks whether a file is a collection file, possibly compressed.
+     *
+     * @param file      the file.
+     * @param extension the extension of the collection files.
+     * @return {@code true} if the file is a collection file, {@code false} otherwise.
+     */
+    public static boolean matches(final Path file, final String extension) {
+        final String name = file.getFileName().toString();
+        return name.endsWith(extension) || name.endsWith(extension + GZIP_EXTENSION);
+    }
+
+    /**
+     * Opens a collection file for reading, decompressing it if needed.
+     *
+     * @param file the collection file.
+     * @param cs   the charset used for encoding the collection file.
+     * @return the reader of the collection file.
+     * @throws IOException if the file cannot be opened or it is not a valid gzip file.
+     */
+    public static BufferedReader newReader(final Path file, final Charset cs) throws IOException {
+
+        if (!isCompressed(file)) {
+            return Files.newBufferedReader(file, cs);
+        }
+
+        final InputStream in = new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        return new BufferedReader(new InputStreamReader(new PipelinedInputStream(in, file.getFileName().toString()),
+                cs.newDecoder()));
+    }
+
+    /**
+     * An input stream filled by a dedicated thread reading another input stream ahead of the consumer
+     *
+     * @version 1.00
+     * @since 1.00
+     */
+    private static final class PipelinedInputStream extends InputStream {
+
+        /**
+         * The marker of the end of the stream
+         */
+        private static final byte[] END = new byte[0];
+
+        /**
+         * The chunks read ahead
+         */
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(CHUNKS);
+
+        /**
+         * The thread reading ahead
+         */
+        private final Thread reader;
+
+        /**
+         * The failure of the thread reading ahead, if any
+         */
+        private volatile IOException failure;
+
+        /**
+         * Whether the stream has been closed
+         */
+        private volatile boolean closed;
+
+        /**
+         * The chunk being consumed
+         */
+        private byte[] chunk;
+
+        /**
+         * The position in the chunk being consumed
+         */
+        private int pos;
+
+        /**
+         * Creates a new stream and starts reading ahead.
+         *
+         * @param in   the stream to be read ahead.
+         * @param name the name of the stream, for naming the thread.
+         */
+        private PipelinedInputStream(final InputStream in, final String name) {
+            reader = new Thread(() -> fill(in), "decompress-" + name);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /**
+         * Reads the whole stream in chunks, followed by the end marker.
+         *
+         * @param in the stream to be read.
+         */
+        private void fill(final InputStream in) {
+            try (in) {
+                while (!closed) {
+                    final byte[] buf = new byte[CHUNK_SIZE];
+                    final int n = in.readNBytes(buf, 0, CHUNK_SIZE);
+                    if (n > 0) {
+                        chunks.put(n == CHUNK_SIZE ? buf : Arrays.copyOf(buf, n));
+                    }
+                    //a partial chunk is read only at the end of the stream
+                    if (n < CHUNK_SIZE) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                //the stream has been closed
+                return;
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            }
+
+            try {
+                chunks.put(END);
+            } catch (InterruptedException e) {
+                //the stream has been closed
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+
+            if (closed) {
+                throw new IOException("Stream closed.");
+            }
+
+            if (len == 0) {
+                return 0;
+            }
+
+            if (chunk != END && (chunk == null || pos == chunk.length)) {
+                try {
+                    chunk = chunks.take();
+                    pos = 0;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the decompressed data.");
+                }
+            }
+
+            if (chunk == END) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return -1;
+            }
+
+            final int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                reader.interrupt();
+                chunks.clear();
+            }
+        }
+    }
+}
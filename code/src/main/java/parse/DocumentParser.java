@@ -17,19 +17,21 @@
 
 package parse;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
- * Represents a document parser.
+ * Represents a document parser. A parser which is not read until its end has to be closed.
  *
  * @author Manuel Barusco (manuel.barusco@studenti.unipd.it)
  * @version 1.00
  * @since 1.00
  */
-public abstract class DocumentParser implements Iterator<ParsedDocument>, Iterable<ParsedDocument> {
+public abstract class DocumentParser implements Iterator<ParsedDocument>, Iterable<ParsedDocument>, Closeable {
 
     /**
      * Indicates whether there is another {@code ParsedDocument} to return.
@@ -41,6 +43,16 @@ public abstract class DocumentParser implements Iterator<ParsedDocument>, Iterab
      */
     protected final Reader in;
 
+    /**
+     * The time in nanoseconds spent decoding the records of the input, e.g. the CSV records.
+     */
+    protected long recordNanos;
+
+    /**
+     * The time in nanoseconds spent decoding the fields of the records, e.g. the JSON values.
+     */
+    protected long fieldNanos;
+
     /**
      * Creates a new document parser.
      *
@@ -56,6 +68,14 @@ public abstract class DocumentParser implements Iterator<ParsedDocument>, Iterab
         this.in = in;
     }
 
+    /**
+     * Creates a new document parser which does not read its document(s) from a reader, e.g. because it reads them
+     * from a memory-mapped file.
+     */
+    protected DocumentParser() {
+        this.in = Reader.nullReader();
+    }
+
     /**
      * Creates a new {@code DocumentParser}.
      * <p>
@@ -85,6 +105,45 @@ public abstract class DocumentParser implements Iterator<ParsedDocument>, Iterab
 
     }
 
+    /**
+     * Creates a new {@code DocumentParser} which decodes only the given fields of the documents.
+     * <p>
+     * It assumes the {@code DocumentParser} has a two-parameters constructor which takes a {@code Reader} and a
+     * {@code Set} of field names (see {@link ParsedDocument.FIELDS}) as input. The fields which are not projected are
+     * left {@code null} in the parsed documents, except for the identifier which is always decoded. Parsers without
+     * such a constructor decode every field.
+     *
+     * @param cls    the class of the document parser to be instantiated.
+     * @param in     the reader to the document(s) to be parsed.
+     * @param fields the names of the fields to be decoded, {@code null} for decoding every field.
+     * @return a new instance of {@code DocumentParser} for the given class.
+     * @throws NullPointerException  if {@code cls} and/or {@code in} are {@code null}.
+     * @throws IllegalStateException if something goes wrong in instantiating the class.
+     */
+    public static DocumentParser create(Class<? extends DocumentParser> cls, Reader in, Set<String> fields) {
+
+        if (fields == null) {
+            return create(cls, in);
+        }
+
+        if (cls == null) {
+            throw new NullPointerException("Document parser class cannot be null.");
+        }
+
+        if (in == null) {
+            throw new NullPointerException("Reader cannot be null.");
+        }
+
+        try {
+            return cls.getConstructor(Reader.class, Set.class).newInstance(in, fields);
+        } catch (NoSuchMethodException e) {
+            return create(cls, in);
+        } catch (Exception e) {
+            throw new IllegalStateException(String.format("Unable to instantiate document parser %s.", cls.getName()), e);
+        }
+
+    }
+
     @Override
     public final Iterator<ParsedDocument> iterator() {
         return this;
@@ -110,6 +169,46 @@ public abstract class DocumentParser implements Iterator<ParsedDocument>, Iterab
         return parse();
     }
 
+    /**
+     * Returns the position in the input of the last document returned, i.e. the number of characters read from the
+     * reader before the document starts. Parsers which do not keep track of it return -1.
+     *
+     * @return the position in the input of the last document returned, -1 if unknown.
+     */
+    public long position() {
+        return -1;
+    }
+
+    /**
+     * Returns the time spent decoding the records of the input so far. Parsers which do not keep track of it
+     * return 0.
+     *
+     * @return the time in nanoseconds spent decoding the records.
+     */
+    public long getRecordNanos() {
+        return recordNanos;
+    }
+
+    /**
+     * Returns the time spent decoding the fields of the records so far, if they are decoded apart from the records.
+     * Parsers which do not keep track of it return 0.
+     *
+     * @return the time in nanoseconds spent decoding the fields of the records.
+     */
+    public long getFieldNanos() {
+        return fieldNanos;
+    }
+
+    /**
+     * Releases the input of the parser, e.g. when the parsing is stopped before the end of the input.
+     *
+     * @throws IOException if the input cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
     /**
      * Performs the actual parsing of the document.
      *
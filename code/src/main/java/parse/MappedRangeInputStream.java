@@ -0,0 +1,127 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package parse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link InputStream} reading a byte range of a file through memory-mapped windows.
+ * <p>
+ * The windows are mapped lazily, one at a time, so ranges larger than 2 GB can be read as well.
+ * The underlying channel is closed as soon as the end of the range is reached.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+final class MappedRangeInputStream extends InputStream {
+
+    /**
+     * The size of a memory-mapped window
+     */
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The channel of the file
+     */
+    private final FileChannel channel;
+
+    /**
+     * The end (exclusive) of the range in the file
+     */
+    private final long end;
+
+    /**
+     * The position in the file where the next window starts
+     */
+    private long next;
+
+    /**
+     * The currently mapped window
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * Creates a new stream over a byte range of a file.
+     *
+     * @param file  the file to be read.
+     * @param start the start (inclusive) of the range.
+     * @param end   the end (exclusive) of the range.
+     * @throws IOException if the file cannot be opened.
+     */
+    MappedRangeInputStream(final Path file, final long start, final long end) throws IOException {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException(String.format("Invalid byte range [%d, %d).", start, end));
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.end = end;
+        this.next = start;
+    }
+
+    /**
+     * Maps the next window if the current one is exhausted.
+     *
+     * @return {@code false} if the end of the range has been reached, {@code true} otherwise.
+     * @throws IOException if the window cannot be mapped.
+     */
+    private boolean ensureWindow() throws IOException {
+        if (window != null && window.hasRemaining()) {
+            return true;
+        }
+        if (next >= end) {
+            close();
+            return false;
+        }
+        final long size = Math.min(WINDOW_SIZE, end - next);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, next, size);
+        next += size;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return ensureWindow() ? window.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+        final int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return window == null ? 0 : window.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
@@ -19,8 +19,15 @@ package parse;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.util.IOSupplier;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents a parsed document to be indexed.
@@ -71,6 +78,11 @@ public class ParsedDocument {
      */
     private final String sourceText;
 
+    /**
+     * The reader streaming the source text of the document, {@code null} if the source text is held in memory
+     */
+    private final IOSupplier<Reader> sourceTextReader;
+
     /**
      * The sentences in which the document is splitted (CSV "SENTENCES" field)
      */
@@ -93,21 +105,74 @@ public class ParsedDocument {
      */
 
     public ParsedDocument(final String id, final String conclusion, final String stance, final String acquisitionTime, final String discussionTitle, final String url, final String sourceTitle, final String sourceText, final Sentence[] sentences) {
+        this(id, conclusion, stance, acquisitionTime, discussionTitle, url, sourceTitle, sourceText, sentences, null);
+    }
+
+    /**
+     * Creates a document in which only the projected fields have been decoded
+     *
+     * @param id the unique document identifier
+     * @param conclusion conclusions of the document
+     * @param stance stance of the document
+     * @param acquisitionTime acquisition time of the document
+     * @param discussionTitle discussion title of the document
+     * @param url url of the document
+     * @param sourceTitle source title of the document
+     * @param sourceText source text of the document
+     * @param sentences sentences of the document
+     * @param fields the names of the decoded fields, {@code null} if every field has been decoded
+     * @throws IllegalArgumentException if ID is null, empty or blank
+     * @throws IllegalArgumentException if sourceText is projected and it is null, empty or blank
+     * @throws IllegalArgumentException if sentences are projected and they are null or empty
+     */
+    public ParsedDocument(final String id, final String conclusion, final String stance, final String acquisitionTime, final String discussionTitle, final String url, final String sourceTitle, final String sourceText, final Sentence[] sentences, final Set<String> fields) {
+        this(id, conclusion, stance, acquisitionTime, discussionTitle, url, sourceTitle, sourceText, null, sentences, fields);
+    }
+
+    /**
+     * Creates a document whose source text is not held in memory, but streamed from where it has been parsed,
+     * e.g. a memory-mapped file, so that the memory needed for indexing it does not depend on the length of the text.
+     * The source text can be read only once (see {@link #getSourceTextReader()}).
+     *
+     * @param id the unique document identifier
+     * @param conclusion conclusions of the document
+     * @param stance stance of the document
+     * @param acquisitionTime acquisition time of the document
+     * @param discussionTitle discussion title of the document
+     * @param url url of the document
+     * @param sourceTitle source title of the document
+     * @param sourceText the reader streaming the source text of the document
+     * @param sentences sentences of the document
+     * @param fields the names of the decoded fields, {@code null} if every field has been decoded
+     * @throws IllegalArgumentException if ID is null, empty or blank
+     * @throws IllegalArgumentException if sourceText is projected and it is null
+     * @throws IllegalArgumentException if sentences are projected and they are null or empty
+     */
+    public ParsedDocument(final String id, final String conclusion, final String stance, final String acquisitionTime, final String discussionTitle, final String url, final String sourceTitle, final IOSupplier<Reader> sourceText, final Sentence[] sentences, final Set<String> fields) {
+        this(id, conclusion, stance, acquisitionTime, discussionTitle, url, sourceTitle, null, sourceText, sentences, fields);
+    }
+
+    /**
+     * Creates a document, whose source text is either held in memory or streamed
+     */
+    private ParsedDocument(final String id, final String conclusion, final String stance, final String acquisitionTime, final String discussionTitle, final String url, final String sourceTitle, final String sourceText, final IOSupplier<Reader> sourceTextReader, final Sentence[] sentences, final Set<String> fields) {
 
         //check the main arguments
         if (id == null || id.isEmpty() || id.isBlank()) {
             throw new IllegalArgumentException("ID field cannot be null, empty or only white spaces");
         }
 
-        if (sourceText == null || sourceText.isEmpty() || sourceText.isBlank()) {
+        //a streamed source text has already been checked when it was first parsed
+        if ((fields == null || fields.contains(FIELDS.SOURCE_TEXT)) && sourceTextReader == null && (sourceText == null || sourceText.isEmpty() || sourceText.isBlank())) {
             throw new IllegalArgumentException("Source text field cannot be null, empty or only white spaces");
         }
 
-        if (sentences == null || sentences.length == 0) {
+        if ((fields == null || fields.contains(FIELDS.SENTENCES)) && (sentences == null || sentences.length == 0)) {
             throw new IllegalArgumentException("Sentence field cannot be null, empty or only white spaces");
         }
 
         this.discussionTitle = Objects.requireNonNullElse(discussionTitle, "");
+        this.sourceTitle = Objects.requireNonNullElse(sourceTitle, "");
 
         //initialization of the object
         this.id = id;
@@ -115,8 +180,8 @@ public class ParsedDocument {
         this.stance = stance;
         this.acquisitionTime = acquisitionTime;
         this.url = url;
-        this.sourceTitle = sourceTitle;
         this.sourceText = sourceText;
+        this.sourceTextReader = sourceTextReader;
         this.sentences = sentences;
     }
 
@@ -180,16 +245,66 @@ public class ParsedDocument {
      * @return the title of the document
      */
     public String getSourceTitle() {
-        return sourceText;
+        return sourceTitle;
     }
 
     /**
-     * Returns the text of the document
+     * Returns the text of the document. A streamed text (see {@link #isSourceTextStreamed()}) is read into memory,
+     * and it cannot be read again.
      *
      * @return the text of the document
      */
     public String getSourceText() {
-        return sourceText;
+        if (sourceTextReader == null) {
+            return sourceText;
+        }
+        try (Reader in = sourceTextReader.get()) {
+            final StringBuilder sb = new StringBuilder();
+            final char[] buf = new char[8192];
+            for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+                sb.append(buf, 0, n);
+            }
+            return sb.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a reader of the text of the document. A streamed text (see {@link #isSourceTextStreamed()}) can be read
+     * only once, and the reader must be closed.
+     *
+     * @return the reader of the text of the document, {@code null} if the text has not been decoded
+     * @throws IOException if the text cannot be streamed
+     */
+    public Reader getSourceTextReader() throws IOException {
+        if (sourceTextReader != null) {
+            return sourceTextReader.get();
+        }
+        return sourceText == null ? null : new StringReader(sourceText);
+    }
+
+    /**
+     * Releases the streamed text of a document which is not going to be indexed, or whose indexing failed, whether its
+     * reader has been opened or not (see {@link #getSourceTextReader()}). A text which is not streamed needs no
+     * release.
+     *
+     * @throws IOException if the streamed text cannot be released
+     */
+    public void discard() throws IOException {
+        if (sourceTextReader instanceof Closeable) {
+            ((Closeable) sourceTextReader).close();
+        }
+    }
+
+    /**
+     * Returns whether the text of the document is streamed from where it has been parsed instead of being held in
+     * memory
+     *
+     * @return whether the text of the document is streamed
+     */
+    public boolean isSourceTextStreamed() {
+        return sourceTextReader != null;
     }
 
     /**
@@ -346,6 +461,32 @@ public class ParsedDocument {
          * Field SENTENCES of the document
          */
         public static final String SENTENCES = "sentences";
+
+        /**
+         * Text of the SENTENCES of the document. It is not indexed, it is only used for asking a
+         * {@link DocumentParser} to decode the text of the sentences besides their identifiers
+         */
+        public static final String SENTENCES_TEXT = "sentencesText";
+
+        /**
+         * Field SOURCE_FILE of the document: the collection file containing it, used for incremental indexing
+         */
+        public static final String SOURCE_FILE = "sourceFile";
+
+        /**
+         * Field GENERATION of the document: the indexing run which indexed it, used for incremental indexing
+         */
+        public static final String GENERATION = "generation";
+
+        /**
+         * Field SENTIMENT of the document: the VADER compound sentiment score of the conclusion, computed at index time
+         */
+        public static final String SENTIMENT = "sentiment";
+
+        /**
+         * Field READABILITY of the document: the Flesch reading ease of the conclusion, computed at index time
+         */
+        public static final String READABILITY = "readability";
     }
 
 
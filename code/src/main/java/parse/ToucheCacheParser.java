@@ -0,0 +1,593 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package parse;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.store.*;
+import org.apache.lucene.util.IOSupplier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parser of a pre-parsed corpus cache, i.e. a compact binary file holding the documents of a collection file as
+ * already parsed by a {@link ToucheParser}, so that the collection can be indexed again without any CSV or JSON work.
+ * <p>
+ * The cache file is memory-mapped and holds, after a header recording the size and the last modification time of
+ * the collection file it was built from, as well as its key, one length-prefixed record for each document, whose
+ * fields are length-prefixed UTF-8 strings. A cache is valid only for the collection file it was built from, and
+ * only as long as that file does not change (see {@link #isValid(Path, Path, String)}).
+ * <p>
+ * The source texts can be streamed from the cache file instead of being decoded (see
+ * {@link #setStreamingSourceText(boolean)}): the parsed documents then hold only a slice of the mapped file, which is
+ * unmapped once the parser is exhausted, or closed, and every streamed text has been read or discarded (see
+ * {@link ParsedDocument#discard()}).
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public class ToucheCacheParser extends DocumentParser {
+
+    /**
+     * The codec name written in the header of the cache files
+     */
+    private static final String CODEC = "ToucheCorpusCache";
+
+    /**
+     * The version of the format of the cache files
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * The extension of the cache files
+     */
+    public static final String EXTENSION = ".tcache";
+
+    /**
+     * The directory containing the cache file
+     */
+    private final Directory dir;
+
+    /**
+     * The cache file
+     */
+    private final IndexInput input;
+
+    /**
+     * The end of the records in the cache file
+     */
+    private final long end;
+
+    /**
+     * The names of the fields to be decoded, {@code null} for decoding every field
+     */
+    private final Set<String> fields;
+
+    /**
+     * The position in the cache file of the last record read
+     */
+    private long position = -1;
+
+    /**
+     * The last document read
+     */
+    private ParsedDocument document;
+
+    /**
+     * Whether the source texts are streamed from the cache file
+     */
+    private boolean streaming;
+
+    /**
+     * Whether the parser has read every document
+     */
+    private boolean exhausted;
+
+    /**
+     * The users of the cache file: the parser and the streamed source texts not yet read
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Creates a new parser of a cache file.
+     *
+     * @param cache the cache file.
+     * @throws NullPointerException if {@code cache} is {@code null}.
+     * @throws IOException          if the cache file cannot be opened or it is not a valid cache file.
+     */
+    public ToucheCacheParser(final Path cache) throws IOException {
+        this(cache, null);
+    }
+
+    /**
+     * Creates a new parser of a cache file which decodes only the given fields of the documents.
+     *
+     * @param cache  the cache file.
+     * @param fields the names of the fields to be decoded (see {@link ParsedDocument.FIELDS}), {@code null} for
+     *               decoding every field.
+     * @throws NullPointerException if {@code cache} is {@code null}.
+     * @throws IOException          if the cache file cannot be opened or it is not a valid cache file.
+     */
+    public ToucheCacheParser(final Path cache, final Set<String> fields) throws IOException {
+        super();
+
+        if (cache == null) {
+            throw new NullPointerException("Cache file cannot be null.");
+        }
+
+        this.fields = fields == null ? null : Set.copyOf(fields);
+
+        dir = new MMapDirectory(cache.toAbsolutePath().getParent());
+        try {
+            input = dir.openInput(cache.getFileName().toString(), IOContext.READONCE);
+            CodecUtil.checkHeader(input, CODEC, VERSION, VERSION);
+            CodecUtil.retrieveChecksum(input);
+            input.seek(CodecUtil.headerLength(CODEC));
+
+            //skip the stamp and the key of the collection file
+            input.readLong();
+            input.readLong();
+            input.readString();
+
+            end = input.length() - CodecUtil.footerLength();
+        } catch (IOException | RuntimeException e) {
+            dir.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the name of the cache file of a collection file. The name is derived from the key of the collection
+     * file, followed by a hash of the key so that two keys never share the same name once their separators are
+     * replaced.
+     *
+     * @param key the key of the collection file, i.e. its path relative to the collection directory.
+     * @return the name of the cache file.
+     */
+    public static String fileName(final String key) {
+
+        if (key == null) {
+            throw new NullPointerException("Key cannot be null.");
+        }
+
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+        final byte[] hash = md.digest(key.getBytes(StandardCharsets.UTF_8));
+
+        return key.replace('/', '_') + "-" + HexFormat.of().formatHex(hash, 0, 8) + EXTENSION;
+    }
+
+    /**
+     * Checks whether a cache file is valid for a collection file, i.e. it has been completely written from the
+     * current version of the same collection file.
+     *
+     * @param cache  the cache file.
+     * @param source the collection file.
+     * @param key    the key of the collection file.
+     * @return {@code true} if the cache file can be used instead of the collection file, {@code false} otherwise.
+     * @throws IOException if the collection file cannot be read.
+     */
+    public static boolean isValid(final Path cache, final Path source, final String key) throws IOException {
+
+        if (Files.notExists(cache)) {
+            return false;
+        }
+
+        final long size = Files.size(source);
+        final long lastModified = Files.getLastModifiedTime(source).toMillis();
+
+        try (Directory dir = new MMapDirectory(cache.toAbsolutePath().getParent());
+             IndexInput in = dir.openInput(cache.getFileName().toString(), IOContext.READONCE)) {
+            CodecUtil.checkHeader(in, CODEC, VERSION, VERSION);
+            CodecUtil.retrieveChecksum(in);
+            in.seek(CodecUtil.headerLength(CODEC));
+            return in.readLong() == size && in.readLong() == lastModified && in.readString().equals(key);
+        } catch (IOException | RuntimeException e) {
+            // a missing, truncated or corrupted cache is rebuilt
+            return false;
+        }
+    }
+
+    /**
+     * Builds the cache file of a collection file, parsing every field of its documents. The cache file is replaced
+     * atomically, only once it has been completely written.
+     *
+     * @param source the collection file.
+     * @param key    the key of the collection file, recorded in the cache file.
+     * @param cs     the charset used for encoding the collection file.
+     * @param cls    the class of the parser of the collection file.
+     * @param cache  the cache file.
+     * @return the number of documents in the cache.
+     * @throws IOException if the collection file cannot be parsed or the cache file cannot be written.
+     */
+    public static long build(final Path source, final String key, final Charset cs,
+                             final Class<? extends ToucheParser> cls, final Path cache) throws IOException {
+
+        // the stamp of the collection file is taken before parsing it: if the file changes meanwhile the cache
+        // will not be valid
+        final long size = Files.size(source);
+        final long lastModified = Files.getLastModifiedTime(source).toMillis();
+
+        final Path tmp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        long docs = 0;
+
+        try (Directory dir = FSDirectory.open(cache.toAbsolutePath().getParent())) {
+
+            try {
+                dir.deleteFile(tmp.getFileName().toString());
+            } catch (NoSuchFileException e) {
+                // nothing to clean up
+            }
+
+            try (Reader in = CompressedCorpus.newReader(source, cs);
+                 IndexOutput out = dir.createOutput(tmp.getFileName().toString(), IOContext.DEFAULT)) {
+
+                CodecUtil.writeHeader(out, CODEC, VERSION);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+                out.writeString(key);
+
+                final ByteBuffersDataOutput record = new ByteBuffersDataOutput();
+                final DocumentParser dp = DocumentParser.create(cls, in);
+
+                for (ParsedDocument pd : dp) {
+                    record.reset();
+                    write(record, pd);
+                    out.writeVLong(record.size());
+                    record.copyTo(out);
+                    docs++;
+                }
+
+                CodecUtil.writeFooter(out);
+            }
+        }
+
+        Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return docs;
+    }
+
+    /**
+     * Writes the record of a document.
+     *
+     * @param out the output.
+     * @param pd  the document.
+     * @throws IOException if the record cannot be written.
+     */
+    private static void write(final DataOutput out, final ParsedDocument pd) throws IOException {
+
+        writeString(out, pd.getIdentifier());
+        writeString(out, pd.getConclusion());
+        writeString(out, pd.getStance());
+        writeString(out, pd.getAcquisitionTime());
+        writeString(out, pd.getDiscussionTitle());
+        writeString(out, pd.getUrl());
+        writeString(out, pd.getSourceTitle());
+        writeString(out, pd.getSourceText());
+
+        final ParsedDocument.Sentence[] sentences = pd.getSentences();
+        if (sentences == null) {
+            out.writeVInt(0);
+            return;
+        }
+
+        out.writeVInt(sentences.length + 1);
+        for (ParsedDocument.Sentence s : sentences) {
+            writeString(out, s.getID());
+            writeString(out, s.getText());
+        }
+    }
+
+    /**
+     * Writes a string that may be {@code null}, as its length in bytes plus one followed by its UTF-8 bytes.
+     *
+     * @param out the output.
+     * @param s   the string.
+     * @throws IOException if the string cannot be written.
+     */
+    private static void writeString(final DataOutput out, final String s) throws IOException {
+        if (s == null) {
+            out.writeVInt(0);
+            return;
+        }
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeVInt(bytes.length + 1);
+        out.writeBytes(bytes, bytes.length);
+    }
+
+    /**
+     * Reads a string that may be {@code null}, skipping it if its field is not decoded.
+     *
+     * @param field the name of the field.
+     * @return the string, {@code null} if it is {@code null} or not decoded.
+     * @throws IOException if the string cannot be read.
+     */
+    private String readString(final String field) throws IOException {
+        final int length = input.readVInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (field != null && fields != null && !fields.contains(field)) {
+            input.skipBytes(length);
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        input.readBytes(bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean hasNext() {
+        final long start = System.nanoTime();
+        try {
+            return advance();
+        } finally {
+            recordNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Reads the next document, if any.
+     *
+     * @return {@code true} if a document has been read, {@code false} if there are no more documents.
+     */
+    private boolean advance() {
+
+        try {
+            if (exhausted) {
+                return false;
+            }
+
+            if (input.getFilePointer() >= end) {
+                exhausted = true;
+                release();
+                return false;
+            }
+
+            position = input.getFilePointer();
+            final long length = input.readVLong();
+            final long next = input.getFilePointer() + length;
+
+            final String id = readString(null);
+            final String conclusion = readString(ParsedDocument.FIELDS.CONCLUSION);
+            final String stance = readString(ParsedDocument.FIELDS.STANCE);
+            final String acquisitionTime = readString(ParsedDocument.FIELDS.ACQUISITION_TIME);
+            final String discussionTitle = readString(ParsedDocument.FIELDS.DISCUSSION_TITLE);
+            final String url = readString(ParsedDocument.FIELDS.URL);
+            final String sourceTitle = readString(ParsedDocument.FIELDS.SOURCE_TITLE);
+            final boolean streamed = streaming && (fields == null || fields.contains(ParsedDocument.FIELDS.SOURCE_TEXT));
+            final String sourceText = streamed ? null : readString(ParsedDocument.FIELDS.SOURCE_TEXT);
+            final StreamedText streamedText = streamed ? streamText() : null;
+
+            ParsedDocument.Sentence[] sentences = null;
+            final int count = input.readVInt() - 1;
+            if (count >= 0 && (fields == null || fields.contains(ParsedDocument.FIELDS.SENTENCES))) {
+                final boolean texts = fields == null || fields.contains(ParsedDocument.FIELDS.SENTENCES_TEXT);
+                final List<ParsedDocument.Sentence> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    final ParsedDocument.Sentence s = new ParsedDocument.Sentence();
+                    s.setSent_id(readString(null));
+                    final String text = readString(texts ? null : ParsedDocument.FIELDS.SENTENCES_TEXT);
+                    if (text != null && !text.isEmpty()) {
+                        s.setSent_text(text);
+                    }
+                    list.add(s);
+                }
+                sentences = list.toArray(new ParsedDocument.Sentence[0]);
+            }
+
+            // the rest of the record, if any, is skipped
+            input.seek(next);
+
+            document = streamedText != null
+                    ? new ParsedDocument(id, conclusion, stance, acquisitionTime, discussionTitle, url, sourceTitle,
+                    streamedText, sentences, fields)
+                    : new ParsedDocument(id, conclusion, stance, acquisitionTime, discussionTitle, url, sourceTitle,
+                    sourceText, sentences, fields);
+
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Skips a string which may be {@code null}, returning a stream of it.
+     *
+     * @return the stream of the string, {@code null} if it is {@code null}.
+     * @throws IOException if the string cannot be skipped.
+     */
+    private StreamedText streamText() throws IOException {
+        final int length = input.readVInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        final IndexInput slice = input.slice("sourceText", input.getFilePointer(), length);
+        input.skipBytes(length);
+        references.incrementAndGet();
+        return new StreamedText(slice);
+    }
+
+    /**
+     * Releases a reference to the cache file, unmapping it once it is no longer used.
+     *
+     * @throws IOException if the cache file cannot be closed.
+     */
+    private void release() throws IOException {
+        if (references.decrementAndGet() == 0) {
+            input.close();
+            dir.close();
+        }
+    }
+
+    /**
+     * Stops the parsing, unmapping the cache file once the streamed texts still in use have been released.
+     *
+     * @throws IOException if the cache file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!exhausted) {
+            exhausted = true;
+            release();
+        }
+    }
+
+    /**
+     * Sets whether the source texts of the documents are streamed from the cache file instead of being decoded (see
+     * {@link ParsedDocument#getSourceTextReader()}), so that the memory held by a parsed document does not depend on
+     * the length of its text. A streamed text can be read only once.
+     *
+     * @param streaming whether the source texts are streamed.
+     */
+    public void setStreamingSourceText(final boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Moves to a document of the cache file, so that the documents before it are not read.
+     *
+     * @param position the position of the document, as returned by {@link #position()}, or 0 for the first one.
+     * @throws IOException if the position is not within the cache file.
+     */
+    public void seek(final long position) throws IOException {
+        if (position == 0) {
+            return;
+        }
+        if (position < input.getFilePointer() || position > end) {
+            throw new IOException(String.format("Invalid position %d in the cache file.", position));
+        }
+        input.seek(position);
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    protected final ParsedDocument parse() {
+        return document;
+    }
+
+    /**
+     * The source text of a document, streamed from its slice of the cache file
+     *
+     * @version 1.00
+     * @since 1.00
+     */
+    private final class StreamedText implements IOSupplier<Reader>, Closeable {
+
+        /**
+         * The slice of the cache file holding the UTF-8 bytes of the text
+         */
+        private final IndexInput slice;
+
+        /**
+         * Whether the text has already been read
+         */
+        private final AtomicBoolean read = new AtomicBoolean();
+
+        /**
+         * The stream of the text, once it has been read
+         */
+        private volatile InputStream stream;
+
+        /**
+         * Creates a new streamed text.
+         *
+         * @param slice the slice of the cache file holding the text.
+         */
+        private StreamedText(final IndexInput slice) {
+            this.slice = slice;
+        }
+
+        @Override
+        public Reader get() {
+
+            if (!read.compareAndSet(false, true)) {
+                throw new IllegalStateException("A streamed source text can be read only once.");
+            }
+
+            stream = new InputStream() {
+
+                private boolean closed;
+
+                @Override
+                public int read() throws IOException {
+                    return slice.getFilePointer() < slice.length() ? slice.readByte() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    final int n = (int) Math.min(len, slice.length() - slice.getFilePointer());
+                    if (n <= 0) {
+                        return len == 0 ? 0 : -1;
+                    }
+                    slice.readBytes(b, off, n);
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (!closed) {
+                        closed = true;
+                        release();
+                    }
+                }
+            };
+
+            return new InputStreamReader(stream, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Releases the text, whether it has been read or not.
+         *
+         * @throws IOException if the cache file cannot be closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (read.compareAndSet(false, true)) {
+                release();
+            } else if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+}
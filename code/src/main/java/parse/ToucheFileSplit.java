@@ -0,0 +1,219 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package parse;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a byte range of a collection CSV file that starts and ends on a record boundary, so that it can be
+ * parsed independently of the other ranges of the same file.
+ * <p>
+ * Every split, except the first one, is read with the header line of the file prepended, so that it can be
+ * parsed by any {@link ToucheParser} as if it were a whole file.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public final class ToucheFileSplit {
+
+    /**
+     * The file the split belongs to
+     */
+    private final Path file;
+
+    /**
+     * The charset used for encoding the file
+     */
+    private final Charset cs;
+
+    /**
+     * The end (exclusive) of the header line of the file
+     */
+    private final long headerEnd;
+
+    /**
+     * The start (inclusive) of the split
+     */
+    private final long start;
+
+    /**
+     * The end (exclusive) of the split
+     */
+    private final long end;
+
+    /**
+     * Creates a new split
+     *
+     * @param file      the file the split belongs to
+     * @param cs        the charset used for encoding the file
+     * @param headerEnd the end (exclusive) of the header line of the file
+     * @param start     the start (inclusive) of the split
+     * @param end       the end (exclusive) of the split
+     */
+    private ToucheFileSplit(final Path file, final Charset cs, final long headerEnd, final long start, final long end) {
+        this.file = file;
+        this.cs = cs;
+        this.headerEnd = headerEnd;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Splits a CSV file into at most {@code splits} ranges aligned to record boundaries.
+     * <p>
+     * The boundaries are found with a single sequential scan of the memory-mapped file that keeps track of the
+     * RFC4180 quoting state: a record ends on a line feed that is not inside a quoted field. Ranges that would not
+     * contain any record are not returned.
+     * <p>
+     * The charset must encode the line feed and the double quote as single bytes, as ISO-8859-1 and UTF-8 do.
+     *
+     * @param file   the CSV file to be split.
+     * @param cs     the charset used for encoding the file.
+     * @param splits the maximum number of ranges.
+     * @return the ranges of the file, in file order.
+     * @throws NullPointerException     if {@code file} and/or {@code cs} are {@code null}.
+     * @throws IllegalArgumentException if {@code splits} is less than or equal to zero.
+     * @throws IOException              if something goes wrong while scanning the file.
+     */
+    public static List<ToucheFileSplit> split(final Path file, final Charset cs, final int splits) throws IOException {
+
+        if (file == null) {
+            throw new NullPointerException("File cannot be null.");
+        }
+
+        if (cs == null) {
+            throw new NullPointerException("Charset cannot be null.");
+        }
+
+        if (splits <= 0) {
+            throw new IllegalArgumentException("The number of splits cannot be less than or equal to zero.");
+        }
+
+        final long size = Files.size(file);
+        final List<ToucheFileSplit> result = new ArrayList<>(splits);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            long headerEnd = -1;
+            long splitStart = 0;
+            long target = -1;
+            int created = 0;
+            boolean quoted = false;
+
+            // no need to scan past the last boundary to be found
+            for (long pos = 0; pos < size && (headerEnd < 0 || created < splits - 1); ) {
+
+                final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos,
+                        Math.min(MappedRangeInputStream.WINDOW_SIZE, size - pos));
+
+                while (window.hasRemaining() && (headerEnd < 0 || created < splits - 1)) {
+                    final byte b = window.get();
+                    pos++;
+
+                    if (b == '"') {
+                        quoted = !quoted;
+                    } else if (b == '\n' && !quoted) {
+
+                        if (headerEnd < 0) {
+                            // the first split always contains the header line
+                            headerEnd = pos;
+                            target = headerEnd + (size - headerEnd) / splits;
+                        } else if (pos >= target && created < splits - 1) {
+                            result.add(new ToucheFileSplit(file, cs, headerEnd, splitStart, pos));
+                            splitStart = pos;
+                            created++;
+                            target = headerEnd + (size - headerEnd) * (created + 1) / splits;
+                        }
+                    }
+                }
+            }
+
+            if (headerEnd < 0) {
+                headerEnd = size;
+            }
+
+            if (splitStart < size || result.isEmpty()) {
+                result.add(new ToucheFileSplit(file, cs, headerEnd, splitStart, size));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Opens a reader over the split. The header line of the file is prepended to every split but the first one.
+     *
+     * @return the reader over the split.
+     * @throws IOException if the file cannot be opened.
+     */
+    public Reader open() throws IOException {
+        InputStream in = new MappedRangeInputStream(file, start, end);
+        if (start > 0) {
+            in = new SequenceInputStream(new MappedRangeInputStream(file, 0, headerEnd), in);
+        }
+        return new BufferedReader(new InputStreamReader(in, cs));
+    }
+
+    /**
+     * Returns the file the split belongs to
+     *
+     * @return the file the split belongs to
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the start (inclusive) of the split in the file
+     *
+     * @return the start (inclusive) of the split in the file
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the end (exclusive) of the split in the file
+     *
+     * @return the end (exclusive) of the split in the file
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the number of bytes of the file in the split
+     *
+     * @return the number of bytes of the file in the split
+     */
+    public long length() {
+        return end - start;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%d, %d)", file.getFileName(), start, end);
+    }
+}
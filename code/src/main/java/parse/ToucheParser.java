@@ -28,7 +28,11 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -82,6 +86,16 @@ public class ToucheParser extends DocumentParser {
      */
     private Iterator<CSVRecord> iterator;
 
+    /**
+     * The character position in the input of the last CSV record read
+     */
+    private long position = -1;
+
+    /**
+     * The names of the fields to be decoded, {@code null} for decoding every field
+     */
+    protected final Set<String> fields;
+
     /**
      * Creates a new document parser.
      *
@@ -91,7 +105,22 @@ public class ToucheParser extends DocumentParser {
      * @throws IOException              if any error occurs while parsing the document
      */
     public ToucheParser(final Reader in) throws IOException {
+        this(in, null);
+    }
+
+    /**
+     * Creates a new document parser which decodes only the given fields of the documents.
+     *
+     * @param in     the reader to the document(s) to be parsed.
+     * @param fields the names of the fields to be decoded (see {@link ParsedDocument.FIELDS}), {@code null} for
+     *               decoding every field.
+     * @throws NullPointerException     if {@code in} is {@code null}
+     * @throws IllegalArgumentException if any error occurs while creating the parse
+     * @throws IOException              if any error occurs while parsing the document
+     */
+    public ToucheParser(final Reader in, final Set<String> fields) throws IOException {
         super(new BufferedReader(in));
+        this.fields = fields == null ? null : Set.copyOf(fields);
         //Build custom CSV reader
         CSVFormat.Builder builder = CSVFormat.Builder.create();
         //RFC4180 rules
@@ -111,35 +140,76 @@ public class ToucheParser extends DocumentParser {
     @Override
     public boolean hasNext() {
 
-        //Json Parser needed for parsing csv json fields
-        JsonParser jparser;
-        if (!iterator.hasNext())
+        final long start = System.nanoTime();
+
+        if (!iterator.hasNext()) {
+            recordNanos += System.nanoTime() - start;
             return false;
+        }
 
         CSVRecord record = iterator.next();
+        position = record.getCharacterPosition();
+
+        final long decoded = System.nanoTime();
+        recordNanos += decoded - start;
+
+        //Catch exceptions while parsing
+        try {
+            document = parseRecord(record);
+        } catch (Throwable e) {
+            System.out.println(e);
+
+            //ONLY FOR DEBUG PURPOSE
+            //System.out.println(record);
+        } finally {
+            fieldNanos += System.nanoTime() - decoded;
+        }
+
+        return true;
+
+    }
+
+    /**
+     * Checks whether a field has to be decoded.
+     *
+     * @param field the name of the field (see {@link ParsedDocument.FIELDS}).
+     * @return {@code true} if the field has to be decoded, {@code false} otherwise.
+     */
+    protected final boolean isProjected(final String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    /**
+     * Builds the {@code ParsedDocument} from a CSV record, parsing the JSON fields of the record.
+     *
+     * @param record the CSV record to be parsed.
+     * @return the parsed document.
+     * @throws IOException if something goes wrong while parsing the JSON fields.
+     */
+    protected ParsedDocument parseRecord(final CSVRecord record) throws IOException {
+
+        //Json Parser needed for parsing csv json fields
+        JsonParser jparser;
 
         //CSV fields data
         String id = record.get(ToucheParser.Headers.id);
-        String conclusion = record.get(ToucheParser.Headers.conclusion);
+        String conclusion = isProjected(ParsedDocument.FIELDS.CONCLUSION) ? record.get(ToucheParser.Headers.conclusion) : null;
 
         //Remove non-printable characters from input CSV fields
         Pattern nonPrintableFilter = Pattern.compile("\\\\x\\p{XDigit}{2}");
-        String premises = nonPrintableFilter.matcher(record.get(Headers.premises)).replaceAll("");
-        String context = nonPrintableFilter.matcher(record.get(Headers.context)).replaceAll("");
-        String sentences = nonPrintableFilter.matcher(record.get(Headers.sentences)).replaceAll("");
-
-        //Catch exceptions while parsing
-        try {
 
-            //JSON fields needed for the document construction
-            String stance;
-            String acquisitionTime;
-            String discussionTitle;
-            String url;
-            String sourceTitle;
-            String sourceText;
+        //JSON fields needed for the document construction
+        String stance = null;
+        String acquisitionTime = null;
+        String discussionTitle = null;
+        String url = null;
+        String sourceTitle = null;
+        String sourceText = null;
+        ParsedDocument.Sentence[] sentencesObj = null;
 
-            //parsing premises json field
+        //parsing premises json field
+        if (isProjected(ParsedDocument.FIELDS.STANCE)) {
+            String premises = nonPrintableFilter.matcher(record.get(Headers.premises)).replaceAll("");
             jparser = new JsonFactory().enable(JsonParser.Feature.ALLOW_SINGLE_QUOTES)
                     //TODO: remove usage of deprecated method
                     .enable(JsonParser.Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER)
@@ -156,8 +226,13 @@ public class ToucheParser extends DocumentParser {
 
             JsonNode root = new ObjectMapper().readTree(jparser);
             stance = root.has("stance") ? root.get("stance").toString().replace("\"", "") : null;
+        }
 
-            //parsing context json field
+        //parsing context json field
+        if (isProjected(ParsedDocument.FIELDS.ACQUISITION_TIME) || isProjected(ParsedDocument.FIELDS.DISCUSSION_TITLE)
+                || isProjected(ParsedDocument.FIELDS.URL) || isProjected(ParsedDocument.FIELDS.SOURCE_TITLE)
+                || isProjected(ParsedDocument.FIELDS.SOURCE_TEXT)) {
+            String context = nonPrintableFilter.matcher(record.get(Headers.context)).replaceAll("");
             jparser = new JsonFactory()
                     .enable(JsonParser.Feature.ALLOW_SINGLE_QUOTES)
                     //TODO: remove usage of deprecated method
@@ -167,39 +242,58 @@ public class ToucheParser extends DocumentParser {
                 throw new IllegalStateException();
             }
 
-            root = new ObjectMapper().readTree(jparser);
-
-            acquisitionTime = root.has("acquisitionTime") ? root.get("acquisitionTime").toString() : null;
-            discussionTitle = root.has("discussionTitle") ? root.get("discussionTitle").toString() : null;
-            url = root.has("sourceUrl") ? root.get("sourceUrl").toString() : null;
-            sourceTitle = root.has("sourceTitle") ? root.get("sourceTitle").toString() : null;
-            sourceText = root.has("sourceText") ? root.get("sourceText").toString() : null;
-
-            //parsing CSV sentences field
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
-            mapper.enable(JsonParser.Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER);
-            ParsedDocument.Sentence[] sentencesObj = mapper.readValue(sentences, ParsedDocument.Sentence[].class);
+            JsonNode root = new ObjectMapper().readTree(jparser);
 
-            /*ONLY FOR DEBUG PURPOSE
-            System.out.println(acquisitionTime);
-            System.out.println(discussionTitle);
-            System.out.println(sourceDomain);
-            System.out.println(url);
-            System.out.println(sourceTitle);
-            System.out.println(sourceText);*/
+            acquisitionTime = root.has("acquisitionTime") && isProjected(ParsedDocument.FIELDS.ACQUISITION_TIME) ? root.get("acquisitionTime").toString() : null;
+            discussionTitle = root.has("discussionTitle") && isProjected(ParsedDocument.FIELDS.DISCUSSION_TITLE) ? root.get("discussionTitle").toString() : null;
+            url = root.has("sourceUrl") && isProjected(ParsedDocument.FIELDS.URL) ? root.get("sourceUrl").toString() : null;
+            sourceTitle = root.has("sourceTitle") && isProjected(ParsedDocument.FIELDS.SOURCE_TITLE) ? root.get("sourceTitle").toString() : null;
+            sourceText = root.has("sourceText") && isProjected(ParsedDocument.FIELDS.SOURCE_TEXT) ? root.get("sourceText").toString() : null;
+        }
 
-            document = new ParsedDocument(id, conclusion, stance, acquisitionTime, discussionTitle, url, sourceTitle, sourceText, sentencesObj);
+        //parsing CSV sentences field
+        if (isProjected(ParsedDocument.FIELDS.SENTENCES)) {
+            String sentences = nonPrintableFilter.matcher(record.get(Headers.sentences)).replaceAll("");
+            if (isProjected(ParsedDocument.FIELDS.SENTENCES_TEXT)) {
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+                mapper.enable(JsonParser.Feature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER);
+                sentencesObj = mapper.readValue(sentences, ParsedDocument.Sentence[].class);
+            } else {
+                //only the identifiers are needed: the texts are skipped without being decoded
+                sentencesObj = ToucheStreamParser.parseSentences(sentences, false);
+            }
+        }
 
-        } catch (Throwable e) {
-            System.out.println(e);
+        /*ONLY FOR DEBUG PURPOSE
+        System.out.println(acquisitionTime);
+        System.out.println(discussionTitle);
+        System.out.println(sourceDomain);
+        System.out.println(url);
+        System.out.println(sourceTitle);
+        System.out.println(sourceText);*/
 
-            //ONLY FOR DEBUG PURPOSE
-            //System.out.println(record);
-        }
+        return new ParsedDocument(id, conclusion, stance, acquisitionTime, discussionTitle, url, sourceTitle, sourceText, sentencesObj, fields);
+    }
 
-        return true;
+    /**
+     * Splits a collection file into record-aligned ranges that can be parsed in parallel, each one by its own
+     * {@code ToucheParser} (see {@link ToucheFileSplit#open()}).
+     *
+     * @param file   the CSV file to be split.
+     * @param cs     the charset used for encoding the file.
+     * @param splits the maximum number of ranges.
+     * @return the ranges of the file, in file order.
+     * @throws IOException if something goes wrong while scanning the file.
+     * @see ToucheFileSplit#split(Path, Charset, int)
+     */
+    public static List<ToucheFileSplit> split(final Path file, final Charset cs, final int splits) throws IOException {
+        return ToucheFileSplit.split(file, cs, splits);
+    }
 
+    @Override
+    public long position() {
+        return position;
     }
 
     @Override
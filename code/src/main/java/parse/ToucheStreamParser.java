@@ -0,0 +1,344 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package parse;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.csv.CSVRecord;
+import utils.Constants;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * CSV + JSON Parser that reads the JSON fields of the collection with the Jackson streaming API.
+ * <p>
+ * Differently from {@link ToucheParser}, the JSON factory and the pattern used for removing the non-printable
+ * characters are shared by all the parsers (they are thread-safe), and no {@code JsonNode} tree is built: the
+ * {@code premises}, {@code context} and {@code sentences} fields are read token by token, skipping every key that is
+ * not needed. The values are rendered exactly as {@link ToucheParser} does, so that both parsers produce the same
+ * {@code ParsedDocument}s and thus the same index.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public class ToucheStreamParser extends ToucheParser {
+
+    /**
+     * Pattern matching the escaped non-printable characters in the CSV fields
+     */
+    private static final Pattern NON_PRINTABLE = Pattern.compile("\\\\x\\p{XDigit}{2}");
+
+    /**
+     * The JSON factory shared by all the parsers
+     */
+    private static final JsonFactory JSON = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+            .enable(JsonReadFeature.ALLOW_BACKSLASH_ESCAPING_ANY_CHARACTER)
+            .build();
+
+    /**
+     * The object mapper used only for rendering the (unexpected) non-scalar values
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper(JSON);
+
+    /**
+     * Creates a new document parser.
+     *
+     * @param in the reader to the document(s) to be parsed.
+     * @throws NullPointerException     if {@code in} is {@code null}
+     * @throws IllegalArgumentException if any error occurs while creating the parse
+     * @throws IOException              if any error occurs while parsing the document
+     */
+    public ToucheStreamParser(final Reader in) throws IOException {
+        super(in);
+    }
+
+    /**
+     * Creates a new document parser which decodes only the given fields of the documents. The JSON values of the
+     * fields which are not projected are skipped without being decoded; if only the {@code SENTENCES} are projected,
+     * only the identifiers of the sentences are decoded.
+     *
+     * @param in     the reader to the document(s) to be parsed.
+     * @param fields the names of the fields to be decoded (see {@link ParsedDocument.FIELDS}), {@code null} for
+     *               decoding every field.
+     * @throws NullPointerException     if {@code in} is {@code null}
+     * @throws IllegalArgumentException if any error occurs while creating the parse
+     * @throws IOException              if any error occurs while parsing the document
+     */
+    public ToucheStreamParser(final Reader in, final Set<String> fields) throws IOException {
+        super(in, fields);
+    }
+
+    @Override
+    protected ParsedDocument parseRecord(final CSVRecord record) throws IOException {
+
+        //CSV fields data
+        final String id = record.get(Headers.id);
+        final String conclusion = isProjected(ParsedDocument.FIELDS.CONCLUSION) ? record.get(Headers.conclusion) : null;
+
+        String stance = null;
+        String acquisitionTime = null;
+        String discussionTitle = null;
+        String url = null;
+        String sourceTitle = null;
+        String sourceText = null;
+
+        //parsing premises json field: only the stance of the first premise is needed
+        if (isProjected(ParsedDocument.FIELDS.STANCE)) {
+            stance = parseStance(removeNonPrintable(record.get(Headers.premises)));
+        }
+
+        //parsing context json field
+        if (isProjected(ParsedDocument.FIELDS.ACQUISITION_TIME) || isProjected(ParsedDocument.FIELDS.DISCUSSION_TITLE)
+                || isProjected(ParsedDocument.FIELDS.URL) || isProjected(ParsedDocument.FIELDS.SOURCE_TITLE)
+                || isProjected(ParsedDocument.FIELDS.SOURCE_TEXT)) {
+            try (JsonParser jparser = JSON.createParser(removeNonPrintable(record.get(Headers.context)))) {
+
+                if (jparser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IllegalStateException("Context field does not contain an object.");
+                }
+
+                while (jparser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String key = jparser.currentName();
+                    jparser.nextToken();
+                    if ("acquisitionTime".equals(key) && isProjected(ParsedDocument.FIELDS.ACQUISITION_TIME)) {
+                        acquisitionTime = render(jparser);
+                    } else if ("discussionTitle".equals(key) && isProjected(ParsedDocument.FIELDS.DISCUSSION_TITLE)) {
+                        discussionTitle = render(jparser);
+                    } else if ("sourceUrl".equals(key) && isProjected(ParsedDocument.FIELDS.URL)) {
+                        url = render(jparser);
+                    } else if ("sourceTitle".equals(key) && isProjected(ParsedDocument.FIELDS.SOURCE_TITLE)) {
+                        sourceTitle = render(jparser);
+                    } else if ("sourceText".equals(key) && isProjected(ParsedDocument.FIELDS.SOURCE_TEXT)) {
+                        sourceText = render(jparser);
+                    } else {
+                        // the value is skipped without being decoded
+                        jparser.skipChildren();
+                    }
+                }
+            }
+        }
+
+        //parsing CSV sentences field
+        final ParsedDocument.Sentence[] sentences = isProjected(ParsedDocument.FIELDS.SENTENCES)
+                ? parseSentences(removeNonPrintable(record.get(Headers.sentences)),
+                isProjected(ParsedDocument.FIELDS.SENTENCES_TEXT))
+                : null;
+
+        return new ParsedDocument(id, conclusion, stance, acquisitionTime, discussionTitle, url, sourceTitle, sourceText, sentences, fields);
+    }
+
+    /**
+     * Parses the stance of the first premise.
+     *
+     * @param premises the JSON array of premises.
+     * @return the stance of the first premise, {@code null} if it has no stance.
+     * @throws IOException if something goes wrong while parsing the JSON array.
+     */
+    private static String parseStance(final String premises) throws IOException {
+
+        String stance = null;
+
+        try (JsonParser jparser = JSON.createParser(premises)) {
+
+            JsonToken token;
+            do {
+                token = jparser.nextToken();
+                if (token == null) {
+                    throw new IllegalStateException("Premises field does not contain an array.");
+                }
+            } while (token != JsonToken.START_ARRAY);
+
+            if (jparser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("Premises array does not contain an object.");
+            }
+
+            while (jparser.nextToken() == JsonToken.FIELD_NAME) {
+                final String key = jparser.currentName();
+                jparser.nextToken();
+                if ("stance".equals(key)) {
+                    stance = render(jparser).replace("\"", "");
+                } else {
+                    jparser.skipChildren();
+                }
+            }
+        }
+
+        return stance;
+    }
+
+    /**
+     * Parses the array of sentences, with the same rules Jackson data binding applies to {@link ParsedDocument.Sentence}.
+     *
+     * @param sentences the JSON array of sentences.
+     * @param texts     whether the text of the sentences has to be decoded besides their identifiers.
+     * @return the parsed sentences, {@code null} if the field contains a JSON null.
+     * @throws IOException if something goes wrong while parsing the JSON array.
+     */
+    static ParsedDocument.Sentence[] parseSentences(final String sentences, final boolean texts) throws IOException {
+
+        try (JsonParser jparser = JSON.createParser(sentences)) {
+
+            JsonToken token = jparser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new IllegalStateException("Sentences field does not contain an array.");
+            }
+
+            final List<ParsedDocument.Sentence> result = new ArrayList<>();
+
+            while ((token = jparser.nextToken()) != JsonToken.END_ARRAY) {
+
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalStateException("Sentences array does not contain an object.");
+                }
+
+                final ParsedDocument.Sentence sentence = new ParsedDocument.Sentence();
+
+                while (jparser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String key = jparser.currentName();
+                    jparser.nextToken();
+                    switch (key) {
+                        case "sent_id" -> sentence.setSent_id(jparser.getValueAsString());
+                        case "sent_text" -> {
+                            if (texts) {
+                                sentence.setSent_text(jparser.getValueAsString());
+                            } else {
+                                jparser.skipChildren();
+                            }
+                        }
+                        default -> throw new IllegalStateException(String.format("Unrecognized sentence field %s.", key));
+                    }
+                }
+
+                result.add(sentence);
+            }
+
+            return result.toArray(new ParsedDocument.Sentence[0]);
+        }
+    }
+
+    /**
+     * Renders the current value of the JSON parser as {@code JsonNode#toString()} would do, i.e. strings are quoted
+     * and escaped.
+     *
+     * @param jparser the JSON parser positioned on a value.
+     * @return the JSON representation of the value.
+     * @throws IOException if something goes wrong while reading a non-scalar value.
+     */
+    private static String render(final JsonParser jparser) throws IOException {
+        final JsonToken token = jparser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            final char[] quoted = JsonStringEncoder.getInstance().quoteAsString(jparser.getText());
+            return new StringBuilder(quoted.length + 2).append('"').append(quoted).append('"').toString();
+        }
+        if (token.isScalarValue()) {
+            return jparser.getText();
+        }
+        return MAPPER.readTree(jparser).toString();
+    }
+
+    /**
+     * Removes the escaped non-printable characters from a CSV field, without allocating anything if there are none.
+     *
+     * @param field the CSV field.
+     * @return the field without escaped non-printable characters.
+     */
+    private static String removeNonPrintable(final String field) {
+        return field.contains("\\x") ? NON_PRINTABLE.matcher(field).replaceAll("") : field;
+    }
+
+    /**
+     * Measures the throughput of this parser against the one of {@link ToucheParser} on the same file, also checking
+     * that both produce the same documents. ONLY FOR DEBUGGING PURPOSE
+     *
+     * @param args command line arguments: the path of the CSV file (optional) and the number of rounds (optional).
+     * @throws Exception if something goes wrong while parsing.
+     */
+    public static void main(String[] args) throws Exception {
+
+        final Path file = Paths.get(args.length > 0 ? args[0] : Constants.tuningArgsPath);
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        final Charset cs = Charset.forName("ISO-8859-1");
+
+        for (int r = 1; r <= rounds; r++) {
+            for (Class<? extends ToucheParser> cls : List.of(ToucheParser.class, ToucheStreamParser.class)) {
+
+                final long start = System.nanoTime();
+                long docs = 0;
+                for (ParsedDocument pd : DocumentParser.create(cls, Files.newBufferedReader(file, cs))) {
+                    docs += pd == null ? 0 : 1;
+                }
+                final double seconds = (System.nanoTime() - start) / 1e9;
+
+                System.out.printf("Round %d, %s: %d document(s) in %.2f seconds (%.0f documents/second).%n",
+                        r, cls.getSimpleName(), docs, seconds, docs / seconds);
+            }
+        }
+
+        // check that both the parsers produce the same documents
+        final DocumentParser tree = DocumentParser.create(ToucheParser.class, Files.newBufferedReader(file, cs));
+        final DocumentParser stream = DocumentParser.create(ToucheStreamParser.class, Files.newBufferedReader(file, cs));
+        long docs = 0;
+        long mismatches = 0;
+        while (tree.hasNext() && stream.hasNext()) {
+            final ParsedDocument a = tree.next();
+            final ParsedDocument b = stream.next();
+            if (!describe(a).equals(describe(b))) {
+                mismatches++;
+            }
+            docs++;
+        }
+        System.out.printf("%d document(s) compared, %d mismatch(es).%n", docs, mismatches);
+    }
+
+    /**
+     * Describes all the values of a parsed document, for comparing the output of different parsers.
+     *
+     * @param pd the parsed document.
+     * @return the description of the document.
+     */
+    private static String describe(final ParsedDocument pd) {
+        if (pd == null) {
+            return "null";
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(pd.getIdentifier()).append('\n').append(pd.getConclusion()).append('\n').append(pd.getStance())
+                .append('\n').append(pd.getAcquisitionTime()).append('\n').append(pd.getDiscussionTitle())
+                .append('\n').append(pd.getUrl()).append('\n').append(pd.getSourceTitle()).append('\n')
+                .append(pd.getSourceText());
+        for (ParsedDocument.Sentence s : pd.getSentences()) {
+            sb.append('\n').append(s);
+        }
+        return sb.toString();
+    }
+}
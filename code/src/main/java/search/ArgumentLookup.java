@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2021-2022 University of Padua, Italy
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package search;
+
+import index.IndexVersions;
+import index.ShardManifest;
+import index.ToucheCodec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import parse.ParsedDocument;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Looks up the arguments of an index by identifier.
+ * <p>
+ * An identifier is looked up segment by segment in the terms dictionary of the {@link ParsedDocument.FIELDS#ID}
+ * field; if the index has been written with the {@link ToucheCodec}, the segments which cannot contain the identifier
+ * are skipped by their bloom filter without any seek. A sharded index (see {@link ShardManifest}) is looked up only in
+ * the shard the identifier is routed to, and of a versioned index (see {@link IndexVersions}) the current build is
+ * looked up, which is held until the lookup is closed.
+ *
+ * @version 1.00
+ * @since 1.00
+ */
+public class ArgumentLookup implements Closeable {
+
+    /**
+     * The reader of every shard of the index
+     */
+    private final DirectoryReader[] readers;
+
+    /**
+     * The lease on the current build of a versioned index, {@code null} if the index is not versioned
+     */
+    private final IndexVersions.Lease lease;
+
+    /**
+     * Creates a new lookup over an index.
+     *
+     * @param indexPath the directory containing the index.
+     * @throws NullPointerException     if {@code indexPath} is {@code null}.
+     * @throws IllegalArgumentException if {@code indexPath} is not a readable directory.
+     * @throws IOException              if the index cannot be read.
+     */
+    public ArgumentLookup(final String indexPath) throws IOException {
+
+        if (indexPath == null) {
+            throw new NullPointerException("Index path cannot be null.");
+        }
+
+        final Path indexDir = Paths.get(indexPath);
+        if (!Files.isReadable(indexDir) || !Files.isDirectory(indexDir)) {
+            throw new IllegalArgumentException(String.format("Index directory %s cannot be read.", indexDir.toAbsolutePath()));
+        }
+
+        if (IndexVersions.isVersioned(indexDir)) {
+            lease = new IndexVersions(indexDir).acquire();
+            try {
+                readers = new DirectoryReader[]{lease.open()};
+            } catch (IOException | RuntimeException e) {
+                lease.close();
+                throw e;
+            }
+            return;
+        }
+
+        lease = null;
+
+        final ShardManifest shards = ShardManifest.read(indexDir);
+        if (shards == null) {
+            readers = new DirectoryReader[]{DirectoryReader.open(FSDirectory.open(indexDir))};
+            return;
+        }
+
+        //the shards are opened in the order used for routing the identifiers
+        readers = new DirectoryReader[shards.getShards()];
+        try {
+            for (int s = 0; s < readers.length; s++) {
+                readers[s] = DirectoryReader.open(FSDirectory.open(indexDir.resolve(ShardManifest.directory(s))));
+            }
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeWhileHandlingException(readers);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the stored fields of an argument.
+     *
+     * @param id the identifier of the argument.
+     * @return the stored fields of the argument, {@code null} if the index does not contain it.
+     * @throws IOException if the index cannot be read.
+     */
+    public Document get(final String id) throws IOException {
+
+        final DirectoryReader reader = readers[ShardManifest.shardOf(id, readers.length)];
+        final BytesRef term = new BytesRef(id);
+
+        for (LeafReaderContext ctx : reader.leaves()) {
+
+            final Terms terms = ctx.reader().terms(ParsedDocument.FIELDS.ID);
+            if (terms == null) {
+                continue;
+            }
+
+            //with the bloom filter most of the segments are rejected here without reading the terms dictionary
+            final TermsEnum te = terms.iterator();
+            if (!te.seekExact(term)) {
+                continue;
+            }
+
+            final Bits liveDocs = ctx.reader().getLiveDocs();
+            final PostingsEnum pe = te.postings(null, PostingsEnum.NONE);
+            for (int doc = pe.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = pe.nextDoc()) {
+                if (liveDocs == null || liveDocs.get(doc)) {
+                    return ctx.reader().document(doc);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the identifiers of the arguments in the index, e.g. for benchmarking the lookups.
+     *
+     * @return the identifiers of the arguments, possibly including the ones of deleted arguments.
+     * @throws IOException if the index cannot be read.
+     */
+    public List<String> identifiers() throws IOException {
+
+        //an identifier is found in more than one segment until the deleted copies are merged away
+        final Set<String> ids = new LinkedHashSet<>();
+        for (DirectoryReader reader : readers) {
+            for (LeafReaderContext ctx : reader.leaves()) {
+                final Terms terms = ctx.reader().terms(ParsedDocument.FIELDS.ID);
+                if (terms == null) {
+                    continue;
+                }
+                final TermsEnum te = terms.iterator();
+                for (BytesRef t = te.next(); t != null; t = te.next()) {
+                    ids.add(t.utf8ToString());
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            IOUtils.close(readers);
+        } finally {
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+}
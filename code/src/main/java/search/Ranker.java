@@ -1,16 +1,20 @@
 package search;
 
+import analyze.TextScores;
 import com.vader.sentiment.analyzer.SentimentAnalyzer;
-import io.whelk.flesch.kincaid.ReadabilityCalculator;
 import org.apache.commons.lang3.Range;
 import org.apache.lucene.benchmark.quality.QualityQuery;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.search.ScoreDoc;
 import parse.ParsedDocument;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -46,35 +50,6 @@ public class Ranker {
         this.documents = documents;
     }
 
-    /**
-     * Assign sentiment score to a document
-     *
-     * @param text string that contains the text of the document
-     * @return score sentiment score of the document
-     */
-    public static float getDocumentSentimentScore(String text){
-        SentimentAnalyzer textSentimentAnalyzer;
-        float sentimentScore = 0;
-        try {
-            textSentimentAnalyzer = new SentimentAnalyzer(text);
-            textSentimentAnalyzer.analyze();
-            sentimentScore = textSentimentAnalyzer.getPolarity().get("compound");
-        } catch (IOException e) {
-            //If some error occurs then do not modify the list
-            System.out.println("Re-ranking aborted, keeping the one given by Lucene : " + e.getMessage());
-        }
-        return sentimentScore;
-    }
-
-    /**
-     * assign readability score to a document
-     * @param text string that contains the text of the document
-     * @return score readability score of the document
-     */
-    public static float getDocumentReadabilityScore(String text){
-       return (float) ReadabilityCalculator.calculateReadingEase(text);
-    }
-
     /**
      * Returns the same list of documents that has been used to construct this object, but the scores associated to
      * the documents are recomputed. Using sentiment analysis re ranks the document by placing before documents
@@ -119,16 +94,23 @@ public class Ranker {
         float newScore;
 
         try {
-            for (ScoreDoc doc : documentsClone) {
-                indexDocument = reader.document(doc.doc);
-                //System.out.printf("conclusion: " + indexDocument.get(ParsedDocument.FIELDS.CONCLUSION));
-                if(indexDocument.get(ParsedDocument.FIELDS.CONCLUSION) == null)
-                    documentSentimentAnalyzer = new SentimentAnalyzer("");
-                else
-                    documentSentimentAnalyzer = new SentimentAnalyzer(indexDocument.get(ParsedDocument.FIELDS.CONCLUSION));
-                documentSentimentAnalyzer.analyze();
-                documentSentimentScore = documentSentimentAnalyzer.getPolarity().get("compound");
-                System.out.println(documentSentimentScore);
+            //scores computed at index time, if any
+            final float[] sentimentScores = precomputedScores(ParsedDocument.FIELDS.SENTIMENT, documentsClone);
+
+            for (int i = 0; i < documentsClone.size(); i++) {
+                final ScoreDoc doc = documentsClone.get(i);
+                if (sentimentScores != null) {
+                    documentSentimentScore = sentimentScores[i];
+                } else {
+                    indexDocument = reader.document(doc.doc);
+                    //System.out.printf("conclusion: " + indexDocument.get(ParsedDocument.FIELDS.CONCLUSION));
+                    if (indexDocument.get(ParsedDocument.FIELDS.CONCLUSION) == null)
+                        documentSentimentAnalyzer = new SentimentAnalyzer("");
+                    else
+                        documentSentimentAnalyzer = new SentimentAnalyzer(indexDocument.get(ParsedDocument.FIELDS.CONCLUSION));
+                    documentSentimentAnalyzer.analyze();
+                    documentSentimentScore = documentSentimentAnalyzer.getPolarity().get("compound");
+                }
                 if (firstSigma.contains(documentSentimentScore)) {
                     newScore = doc.score + doc.score * documentSentimentScore;
                     doc.score = newScore;
@@ -166,12 +148,27 @@ public class Ranker {
         ArrayList<ScoreDoc> documentsClone = (ArrayList<ScoreDoc>) documents.clone();
         float newScore;
 
-        for(ScoreDoc document:documentsClone) {
+        //scores computed at index time, if any
+        float[] readabilityScores = null;
+        try {
+            readabilityScores = precomputedScores(ParsedDocument.FIELDS.READABILITY, documentsClone);
+        } catch (IOException e) {
+            System.out.println("An error occurred while re-ranking documents: " + e.getMessage());
+        }
+
+        for (int i = 0; i < documentsClone.size(); i++) {
+            final ScoreDoc document = documentsClone.get(i);
             try {
-                Document indexDocument = reader.document(document.doc);
-                String field = indexDocument.get(ParsedDocument.FIELDS.CONCLUSION);
-                //Calculate readability on the conclusion field
-                float readabilityScore = (float) ReadabilityCalculator.calculateReadingEase(field);
+                final float readabilityScore;
+                if (readabilityScores != null) {
+                    //the indexes built before empty conclusions were scored 0 may contain NaN scores
+                    readabilityScore = Float.isFinite(readabilityScores[i]) ? readabilityScores[i] : 0;
+                } else {
+                    Document indexDocument = reader.document(document.doc);
+                    String field = indexDocument.get(ParsedDocument.FIELDS.CONCLUSION);
+                    //Calculate readability on the conclusion field
+                    readabilityScore = TextScores.getDocumentReadabilityScore(field);
+                }
                 //Calculate the new score
                 newScore = document.score + document.score * readabilityScore;
                 document.score = newScore;
@@ -188,4 +185,46 @@ public class Ranker {
 
     }
 
+    /**
+     * Reads the scores computed at index time (see {@link index.ToucheIndexer#setEnrichment(boolean)}) for the
+     * given documents. The documents are visited in index order, so that the doc values of every segment are read
+     * with a single forward pass.
+     *
+     * @param field the doc values field of the scores
+     * @param docs  the documents
+     * @return the scores of the documents, in the same order, or {@code null} if some document has no score
+     * @throws IOException if the doc values cannot be read
+     */
+    private float[] precomputedScores(String field, List<ScoreDoc> docs) throws IOException {
+
+        final float[] scores = new float[docs.size()];
+
+        final Integer[] order = new Integer[docs.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> docs.get(i).doc));
+
+        final List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = null;
+        NumericDocValues values = null;
+
+        for (int i : order) {
+            final int doc = docs.get(i).doc;
+
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                values = leaf.reader().getNumericDocValues(field);
+            }
+
+            if (values == null || !values.advanceExact(doc - leaf.docBase)) {
+                return null;
+            }
+
+            scores[i] = Float.intBitsToFloat((int) values.longValue());
+        }
+
+        return scores;
+    }
+
 }
@@ -17,16 +17,22 @@
 package search;
 
 import analyze.ToucheAnalyzerQueries;
+import index.HitSidecar;
+import index.IndexMetadata;
+import index.SentenceIDs;
+import index.IndexVersions;
+import index.ShardManifest;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.benchmark.quality.QualityQuery;
-import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.*;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParserBase;
 import org.apache.lucene.search.*;
 import org.apache.lucene.search.similarities.LMDirichletSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.IOUtils;
 import parse.CustomQueryParser;
 import parse.ParsedDocument;
 import utils.Constants;
@@ -40,6 +46,10 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -63,13 +73,33 @@ public class ToucheSearcher {
      */
     private final PrintWriter run;
     /**
-     * The index reader
+     * The index reader, spanning every searched index
      */
     private final IndexReader reader;
     /**
-     * The index searcher.
+     * The index searcher, spanning every searched index.
      */
     private final IndexSearcher searcher;
+    /**
+     * The searchers of the single indexes, sharing the statistics of the whole collection
+     */
+    private final IndexSearcher[] searchers;
+    /**
+     * The first document of every index within {@link #reader}
+     */
+    private final int[] docBases;
+    /**
+     * The sidecar of every index, {@code null} for the indexes without a sidecar
+     */
+    private final HitSidecar[] sidecars;
+    /**
+     * The leases on the builds of the versioned indexes, {@code null} for the indexes which are not versioned
+     */
+    private final IndexVersions.Lease[] leases;
+    /**
+     * The threads searching the indexes concurrently, {@code null} if there is a single index
+     */
+    private final ExecutorService executor;
     /**
      * The topics to be searched
      */
@@ -105,6 +135,35 @@ public class ToucheSearcher {
     public ToucheSearcher(final Analyzer analyzer, final Similarity similarity, final String indexPath,
                           final String topicsFile, final int expectedTopics, final String runID, final String runPath,
                           final int maxDocsRetrieved, Map<String, Float> queryWeights) {
+        this(analyzer, similarity, List.of(Objects.requireNonNull(indexPath, "Index path cannot be null.")),
+                topicsFile, expectedTopics, runID, runPath, maxDocsRetrieved, queryWeights);
+    }
+
+    /**
+     * New searcher over several indexes, e.g. the collections of different years or independently built partitions
+     * of a collection.
+     * <p>
+     * The indexes are searched concurrently, one thread for each index, and their results are merged. The term and
+     * collection statistics are computed over all the indexes, so that the scores of the documents of different
+     * indexes are comparable. A sharded index (see {@link ShardManifest}) is searched as the list of its shards. Of a
+     * versioned index (see {@link IndexVersions}) the current build is searched, which is held until the search ends
+     * even if a new build replaces it meanwhile.
+     *
+     * @param analyzer         the {@code Analyzer} to be used.
+     * @param similarity       the {@code Similarity} to be used.
+     * @param indexPaths       the directories containing the indexes to be searched.
+     * @param topicsFile       the file containing the topics to search for.
+     * @param expectedTopics   the total number of topics expected to be searched.
+     * @param runID            the identifier of the run to be created.
+     * @param runPath          the path where to store the run.
+     * @param maxDocsRetrieved the maximum number of documents to be retrieved.
+     * @param queryWeights     fields weight for query boosting
+     * @throws NullPointerException     if any of the parameters is {@code null}.
+     * @throws IllegalArgumentException if any of the parameters assumes invalid values.
+     */
+    public ToucheSearcher(final Analyzer analyzer, final Similarity similarity, final List<String> indexPaths,
+                          final String topicsFile, final int expectedTopics, final String runID, final String runPath,
+                          final int maxDocsRetrieved, Map<String, Float> queryWeights) {
 
         if (analyzer == null) {
             throw new NullPointerException("Analyzer cannot be null.");
@@ -114,34 +173,106 @@ public class ToucheSearcher {
             throw new NullPointerException("Similarity cannot be null.");
         }
 
-        if (indexPath == null) {
-            throw new NullPointerException("Index path cannot be null.");
+        if (indexPaths == null) {
+            throw new NullPointerException("Index paths cannot be null.");
         }
 
-        if (indexPath.isEmpty()) {
-            throw new IllegalArgumentException("Index path cannot be empty.");
+        if (indexPaths.isEmpty()) {
+            throw new IllegalArgumentException("Index paths cannot be empty.");
         }
 
-        final Path indexDir = Paths.get(indexPath);
-        if (!Files.isReadable(indexDir)) {
-            throw new IllegalArgumentException(String.format("Index directory %s cannot be read.", indexDir.toAbsolutePath()));
+        final List<Path> indexDirs = new ArrayList<>();
+        final List<IndexVersions.Lease> dirLeases = new ArrayList<>();
+        for (String indexPath : indexPaths) {
+
+            if (indexPath == null) {
+                throw new NullPointerException("Index path cannot be null.");
+            }
+
+            if (indexPath.isEmpty()) {
+                throw new IllegalArgumentException("Index path cannot be empty.");
+            }
+
+            final Path indexDir = Paths.get(indexPath);
+            if (!Files.isReadable(indexDir)) {
+                throw new IllegalArgumentException(String.format("Index directory %s cannot be read.", indexDir.toAbsolutePath()));
+            }
+
+            if (!Files.isDirectory(indexDir)) {
+                throw new IllegalArgumentException(String.format("%s expected to be a directory where to search the index.",
+                        indexDir.toAbsolutePath()));
+            }
+
+            try {
+                final ShardManifest shards = ShardManifest.read(indexDir);
+                if (IndexVersions.isVersioned(indexDir)) {
+                    final IndexVersions.Lease lease = new IndexVersions(indexDir).acquire();
+                    indexDirs.add(lease.getPath());
+                    dirLeases.add(lease);
+                } else if (shards == null) {
+                    indexDirs.add(indexDir);
+                    dirLeases.add(null);
+                } else {
+                    shards.getDirectories().forEach(d -> {
+                        indexDirs.add(indexDir.resolve(d));
+                        dirLeases.add(null);
+                    });
+                }
+            } catch (IOException e) {
+                IOUtils.closeWhileHandlingException(dirLeases);
+                throw new IllegalArgumentException(String.format("Unable to read the index directory %s: %s.",
+                        indexDir.toAbsolutePath(), e.getMessage()), e);
+            }
         }
 
-        if (!Files.isDirectory(indexDir)) {
-            throw new IllegalArgumentException(String.format("%s expected to be a directory where to search the index.",
-                    indexDir.toAbsolutePath()));
+        leases = dirLeases.toArray(new IndexVersions.Lease[0]);
+        final IndexReader[] readers = new IndexReader[indexDirs.size()];
+        docBases = new int[readers.length];
+        sidecars = new HitSidecar[readers.length];
+        for (int r = 0; r < readers.length; r++) {
+            try {
+                final DirectoryReader dr = leases[r] == null ? DirectoryReader.open(FSDirectory.open(indexDirs.get(r)))
+                        : leases[r].open();
+                readers[r] = dr;
+
+                //fail fast if the index cannot be searched with the given analyzer
+                IndexMetadata.check(dr.getIndexCommit().getUserData(), analyzer, similarity,
+                        indexDirs.get(r).toAbsolutePath().toString());
+
+                sidecars[r] = HitSidecar.open(indexDirs.get(r), dr);
+            } catch (IllegalArgumentException e) {
+                IOUtils.closeWhileHandlingException(readers);
+                IOUtils.closeWhileHandlingException(leases);
+                throw e;
+            } catch (IOException e) {
+                IOUtils.closeWhileHandlingException(readers);
+                IOUtils.closeWhileHandlingException(leases);
+                throw new IllegalArgumentException(String.format("Unable to create the index reader for directory %s: %s.",
+                        indexDirs.get(r).toAbsolutePath(), e.getMessage()), e);
+            }
+            docBases[r] = r == 0 ? 0 : docBases[r - 1] + readers[r - 1].maxDoc();
         }
 
         try {
-            reader = DirectoryReader.open(FSDirectory.open(indexDir));
+            reader = readers.length == 1 ? readers[0] : new MultiReader(readers, true);
         } catch (IOException e) {
-            throw new IllegalArgumentException(String.format("Unable to create the index reader for directory %s: %s.",
-                    indexDir.toAbsolutePath(), e.getMessage()), e);
+            IOUtils.closeWhileHandlingException(readers);
+            IOUtils.closeWhileHandlingException(leases);
+            throw new IllegalArgumentException(String.format("Unable to create the index reader: %s.", e.getMessage()), e);
         }
 
         searcher = new IndexSearcher(reader);
         searcher.setSimilarity(similarity);
 
+        searchers = new IndexSearcher[readers.length];
+        for (int r = 0; r < readers.length; r++) {
+            searchers[r] = readers.length == 1 ? searcher : new PartitionSearcher(readers[r], searcher);
+            searchers[r].setSimilarity(similarity);
+        }
+
+        executor = readers.length == 1 ? null : Executors.newFixedThreadPool(
+                Math.min(readers.length, Runtime.getRuntime().availableProcessors()));
+
         if (topicsFile == null) {
             throw new NullPointerException("Topics file cannot be null.");
         }
@@ -315,7 +446,7 @@ public class ToucheSearcher {
 
                 q = bq.build();
 
-                docs = searcher.search(q, maxDocsRetrieved);
+                docs = search(q, maxDocsRetrieved);
 
                 sd = docs.scoreDocs;
 
@@ -325,13 +456,16 @@ public class ToucheSearcher {
                 //HasSet for removing duplicated sentences pair in the search
                 Set<String> stanceAndSentencesIDRetrieved = new HashSet<>();
 
+                //identifiers, sentences and stances of the retrieved documents
+                final Hit[] hits = resolve(Arrays.asList(sd), idField);
+
                 for (int i = 0, n = sd.length; i < n; i++) {
 
-                    docID = reader.document(sd[i].doc, idField).get(ParsedDocument.FIELDS.ID);
+                    docID = hits[i].id;
                     if (!nod.contains(docID)) {
                         nod.add(docID);
-                        sentencesID = reader.document(sd[i].doc, idField).getValues(ParsedDocument.FIELDS.SENTENCES);
-                        stance = reader.document(sd[i].doc, idField).get(ParsedDocument.FIELDS.STANCE);
+                        sentencesID = hits[i].sentences;
+                        stance = hits[i].stance;
 
                         //prepare premises and sentences id for the ToucheSentencesRetriever
                         Vector<String> premsIDs = new Vector<>();
@@ -375,6 +509,10 @@ public class ToucheSearcher {
         } finally {
             run.close();
             reader.close();
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            release();
         }
 
         elapsedTime = System.currentTimeMillis() - start;
@@ -453,7 +591,7 @@ public class ToucheSearcher {
 
                 //Execute the original query
                 q = bq.build();
-                docs = searcher.search(q, maxDocsRetrieved);
+                docs = search(q, maxDocsRetrieved);
                 sd = docs.scoreDocs;
 
                 //Add the documents found to the result
@@ -483,7 +621,7 @@ public class ToucheSearcher {
 
                         //Build the query
                         q = bq.build();
-                        docs = searcher.search(q, maxDocsRetrieved);
+                        docs = search(q, maxDocsRetrieved);
                         sd = docs.scoreDocs;
 
                         //Add all the retrieved documents to the array list
@@ -533,16 +671,22 @@ public class ToucheSearcher {
 
                 //HasSet for removing duplicated sentences pair in the search
                 Set<String> stanceAndSentencesIDRetrieved = new HashSet<>();
-                for (ScoreDoc document : cutUniqueDocuments) {
+
+                //identifiers, sentences and stances of the retrieved documents
+                final Hit[] hits = resolve(cutUniqueDocuments, idField);
+
+                for (int h = 0; h < hits.length; h++) {
+
+                    final ScoreDoc document = cutUniqueDocuments.get(h);
 
                     //retrieve the docID
-                    docID = reader.document(document.doc, idField).get(ParsedDocument.FIELDS.ID);
+                    docID = hits[h].id;
 
                     //check if the docID was already retrieve
                     if (!docIDs.contains(docID)) {
                         docIDs.add(docID);
-                        sentencesID = reader.document(document.doc, idField).getValues(ParsedDocument.FIELDS.SENTENCES);
-                        stance = reader.document(document.doc, idField).get(ParsedDocument.FIELDS.STANCE);
+                        sentencesID = hits[h].sentences;
+                        stance = hits[h].stance;
 
                         //prepare premises and sentences id for the ToucheSentencesRetriever
                         Vector<String> premsIDs = new Vector<>();
@@ -584,6 +728,10 @@ public class ToucheSearcher {
         } finally {
             run.close();
             reader.close();
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            release();
         }
 
         elapsedTime = System.currentTimeMillis() - start;
@@ -591,6 +739,201 @@ public class ToucheSearcher {
         System.out.print("#### Searching complete ####\n");
     }
 
+    /**
+     * Searches every index concurrently and merges their results.
+     *
+     * @param q the query.
+     * @param n the maximum number of documents to retrieve.
+     * @return the top documents of all the indexes, identified by their position in {@link #reader}.
+     * @throws IOException if something goes wrong while searching.
+     */
+    private TopDocs search(final Query q, final int n) throws IOException {
+
+        if (executor == null) {
+            return searcher.search(q, n);
+        }
+
+        final List<Future<TopDocs>> results = new ArrayList<>(searchers.length);
+        for (IndexSearcher s : searchers) {
+            results.add(executor.submit(() -> s.search(q, n)));
+        }
+
+        final TopDocs[] partitionDocs = new TopDocs[searchers.length];
+        try {
+            for (int r = 0; r < partitionDocs.length; r++) {
+                partitionDocs[r] = results.get(r).get();
+                for (ScoreDoc sd : partitionDocs[r].scoreDocs) {
+                    sd.shardIndex = r;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while searching.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(String.format("Unable to search the indexes: %s.", e.getCause()), e.getCause());
+        }
+
+        final TopDocs merged = TopDocs.merge(n, partitionDocs);
+
+        //the documents of every index are renumbered within the reader over all the indexes
+        for (ScoreDoc sd : merged.scoreDocs) {
+            sd.doc += docBases[sd.shardIndex];
+        }
+
+        return merged;
+    }
+
+    /**
+     * Releases the builds of the versioned indexes once the search is over, deleting the builds which have been
+     * replaced and are no longer searched.
+     *
+     * @throws IOException if a build cannot be released.
+     */
+    private void release() throws IOException {
+        for (IndexVersions.Lease lease : leases) {
+            if (lease != null) {
+                lease.close();
+                lease.getVersions().collect();
+            }
+        }
+    }
+
+    /**
+     * Reads the identifier, the sentences and the stance of the retrieved documents.
+     * <p>
+     * The values are read from the memory-mapped sidecar of the index (see {@link HitSidecar}), if any. Otherwise they
+     * are read column-wise from the doc values, visiting the documents in index order so that every segment is read
+     * with a single forward pass. Indexes without doc values fall back to the stored fields.
+     *
+     * @param docs   the retrieved documents.
+     * @param fields the stored fields to load when the index has no doc values.
+     * @return the identifier, the sentences and the stance of the documents, in the same order.
+     * @throws IOException if something goes wrong while reading the index.
+     */
+    private Hit[] resolve(final List<ScoreDoc> docs, final Set<String> fields) throws IOException {
+
+        final Hit[] hits = new Hit[docs.size()];
+
+        final Integer[] order = new Integer[hits.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> docs.get(i).doc));
+
+        final List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = null;
+        SortedDocValues ids = null;
+        SortedDocValues stances = null;
+        BinaryDocValues sentences = null;
+
+        for (int i : order) {
+            final int doc = docs.get(i).doc;
+
+            //the sidecar of the index, if any, is read without touching the index
+            final int r = ReaderUtil.subIndex(doc, docBases);
+            if (sidecars[r] != null && sidecars[r].contains(doc - docBases[r])) {
+                final String id = sidecars[r].id(doc - docBases[r]);
+                hits[i] = new Hit(id, sidecars[r].stance(doc - docBases[r]),
+                        sidecars[r].sentences(doc - docBases[r], id));
+                continue;
+            }
+
+            if (leaf == null || doc >= leaf.docBase + leaf.reader().maxDoc()) {
+                leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                ids = leaf.reader().getSortedDocValues(ParsedDocument.FIELDS.ID);
+                stances = leaf.reader().getSortedDocValues(ParsedDocument.FIELDS.STANCE);
+                sentences = leaf.reader().getBinaryDocValues(ParsedDocument.FIELDS.SENTENCES);
+            }
+
+            final int segmentDoc = doc - leaf.docBase;
+
+            if (ids != null && stances != null && sentences != null && ids.advanceExact(segmentDoc)
+                    && stances.advanceExact(segmentDoc) && sentences.advanceExact(segmentDoc)) {
+                final String id = ids.lookupOrd(ids.ordValue()).utf8ToString();
+                hits[i] = new Hit(id, stances.lookupOrd(stances.ordValue()).utf8ToString(),
+                        SentenceIDs.decode(id, sentences.binaryValue()));
+            } else {
+                final Document d = reader.document(doc, fields);
+                hits[i] = new Hit(d.get(ParsedDocument.FIELDS.ID), d.get(ParsedDocument.FIELDS.STANCE),
+                        d.getValues(ParsedDocument.FIELDS.SENTENCES));
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * Searcher of one of several indexes, which scores the documents with the term and collection statistics of all
+     * the indexes instead of its own ones
+     */
+    private static final class PartitionSearcher extends IndexSearcher {
+
+        /**
+         * The searcher over all the indexes
+         */
+        private final IndexSearcher global;
+
+        /**
+         * Creates a new searcher of one of several indexes
+         *
+         * @param reader the reader of the index
+         * @param global the searcher over all the indexes
+         */
+        private PartitionSearcher(final IndexReader reader, final IndexSearcher global) {
+            super(reader);
+            this.global = global;
+        }
+
+        @Override
+        public TermStatistics termStatistics(final Term term, final int docFreq, final long totalTermFreq)
+                throws IOException {
+            final IndexReader all = global.getIndexReader();
+            return global.termStatistics(term, all.docFreq(term), all.totalTermFreq(term));
+        }
+
+        @Override
+        public CollectionStatistics collectionStatistics(final String field) throws IOException {
+            return global.collectionStatistics(field);
+        }
+    }
+
+    /**
+     * The identifier, the sentences and the stance of a retrieved document
+     */
+    private static final class Hit {
+
+        /**
+         * The identifier of the document
+         */
+        private final String id;
+
+        /**
+         * The stance of the document
+         */
+        private final String stance;
+
+        /**
+         * The sentences identifiers of the document
+         */
+        private final String[] sentences;
+
+        /**
+         * Creates a new retrieved document
+         *
+         * @param id        the identifier of the document
+         * @param stance    the stance of the document
+         * @param sentences the sentences identifiers of the document
+         */
+        private Hit(final String id, final String stance, final String[] sentences) {
+            this.id = id;
+            this.stance = stance;
+            this.sentences = sentences;
+        }
+    }
+
     /**
      * The fields of the typical TREC topics.
      *
@@ -2,25 +2,37 @@ package utils;
 
 import analyze.ToucheAnalyzer;
 import analyze.ToucheAnalyzerTuning;
+import index.IndexManifest;
 import index.ToucheIndexer;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenFilter;
 import org.apache.lucene.analysis.en.EnglishMinimalStemFilter;
 import org.apache.lucene.analysis.en.KStemFilter;
 import org.apache.lucene.analysis.en.PorterStemFilter;
+import org.apache.lucene.codecs.lucene90.Lucene90Codec;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.similarities.BM25Similarity;
 import org.apache.lucene.search.similarities.LMDirichletSimilarity;
 import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.FSDirectory;
 import parse.ParsedDocument;
-import parse.ToucheParser;
+import parse.ToucheStreamParser;
+import search.ArgumentLookup;
 import search.ToucheSearcher;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * Main clas that runs the whole project
@@ -71,6 +83,9 @@ public class Main {
         System.out.println("4 - Run indexer & searcher with different stemmers (using BM25)");
         System.out.println("5 - Run the whole pipeline with different score thresholds in query expansion (using BM25)");
         System.out.println("6 - Run searcher with different score thresholds in query expansion (using LMDirichletSimilarity)");
+        System.out.println("7 - Compare index size and search time with and without sorting the index by discussion (using BM25)");
+        System.out.println("8 - Compare upsert and lookup time with and without bloom-filtered identifiers (using BM25)");
+        System.out.println("9 - Compare build time, index size and stored fields access time of the codec modes (using BM25)");
 
         // Reading data using readLine
         Integer option = null;
@@ -98,6 +113,9 @@ public class Main {
                 runIndexer(analyzer, similarity, ramBuffer, indexPath, docsPath, extension, charsetName, expectedDocs);
                 runSearchDifferentThresholdsQE(analyzer, similarity, indexPath, topics, expectedTopics, runID, runPath, maxDocsRetrieved, queryWeights);
             }
+            case 7 -> runIndexSortComparison(analyzer, similarity, ramBuffer, indexPath, docsPath, extension, charsetName, expectedDocs, topics, expectedTopics, runID, runPath, maxDocsRetrieved, queryWeights);
+            case 8 -> runBloomFilterComparison(analyzer, similarity, ramBuffer, indexPath, docsPath, extension, charsetName, expectedDocs);
+            case 9 -> runCodecComparison(analyzer, similarity, ramBuffer, indexPath, docsPath, extension, charsetName, expectedDocs);
 
         }
 
@@ -120,7 +138,7 @@ public class Main {
 
         try {
             new ToucheIndexer(analyzer, similarity, ramBuffer, indexPath, docsPath, extension,
-                    charsetName, expectedDocs, ToucheParser.class).index();
+                    charsetName, expectedDocs, ToucheStreamParser.class).index();
         } catch (IOException e) {
             System.out.println(e.getMessage());
             System.exit(1);
@@ -128,6 +146,36 @@ public class Main {
 
     }
 
+    /**
+     * run the indexing phase for several analyzers, parsing the collection only once
+     *
+     * @param analyzers    analyzers that must be used, each one with the suffix of its index directory
+     * @param similarity   similarity that must be used
+     * @param ramBuffer    dimension of the RAM buffer that must be used
+     * @param indexPath    prefix of the directories where to store the index files
+     * @param docsPath     where to retrieve the collection documents
+     * @param extension    extension of the document files
+     * @param charsetName  charset to be used
+     * @param expectedDocs number of documents expected to be retrieved
+     * @throws IOException if something goes wrong while indexing
+     */
+    private static void runIndexerVariants(Map<String, ? extends Analyzer> analyzers, Similarity similarity, int ramBuffer,
+                                           String indexPath, String docsPath, String extension, String charsetName,
+                                           int expectedDocs) throws IOException {
+
+        ToucheIndexer indexer = null;
+        for (Map.Entry<String, ? extends Analyzer> e : analyzers.entrySet()) {
+            if (indexer == null) {
+                indexer = new ToucheIndexer(e.getValue(), similarity, ramBuffer, indexPath + "_" + e.getKey(), docsPath,
+                        extension, charsetName, expectedDocs, ToucheStreamParser.class);
+            } else {
+                indexer.addVariant(e.getValue(), indexPath + "_" + e.getKey());
+            }
+        }
+
+        indexer.index();
+    }
+
     /**
      * run the search phase
      *
@@ -156,6 +204,171 @@ public class Main {
         }
     }
 
+    /**
+     * run indexing and search phases with and without sorting the index by discussion, reporting the index size and
+     * the search time of both
+     *
+     * @param analyzer         analyzer that must be used
+     * @param similarity       similarity that must be used
+     * @param ramBuffer        dimension of the RAM buffer that must be used
+     * @param indexPath        prefix of the directories where to store the index files
+     * @param docsPath         where to retrieve the collection documents
+     * @param extension        extension of the document files
+     * @param charsetName      charset to be used
+     * @param expectedDocs     number of documents expected to be retrieved
+     * @param topics           where the topics file is stored
+     * @param expectedTopics   number of expected topics
+     * @param runID            id of the run
+     * @param runPath          where to store the run results
+     * @param maxDocsRetrieved maximum number of documents to be retrieved
+     * @param queryWeights     weights to be used in the search boosting
+     */
+    private static void runIndexSortComparison(Analyzer analyzer, Similarity similarity, int ramBuffer, String indexPath,
+                                               String docsPath, String extension, String charsetName, int expectedDocs,
+                                               String topics, int expectedTopics, String runID, String runPath,
+                                               int maxDocsRetrieved, Map<String, Float> queryWeights) {
+
+        final Map<String, String> report = new LinkedHashMap<>();
+
+        for (boolean sorted : new boolean[]{false, true}) {
+
+            final String suffix = sorted ? "sorted" : "unsorted";
+
+            try {
+                ToucheIndexer indexer = new ToucheIndexer(analyzer, similarity, ramBuffer, indexPath + "_" + suffix,
+                        docsPath, extension, charsetName, expectedDocs, ToucheStreamParser.class);
+                indexer.setDiscussionSort(sorted);
+                indexer.index();
+
+                ToucheSearcher s = new ToucheSearcher(analyzer, similarity, indexPath + "_" + suffix, topics,
+                        expectedTopics, runID + suffix, runPath, maxDocsRetrieved, queryWeights);
+                s.search();
+
+                report.put(suffix, String.format("%d Kbytes, %d ms searching",
+                        ToucheIndexer.indexSize(Paths.get(indexPath + "_" + suffix)) / 1024, s.getElapsedTime()));
+            } catch (IOException | ParseException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        report.forEach((k, v) -> System.out.printf("Index %s: %s.%n", k, v));
+    }
+
+    /**
+     * run the indexing phase with and without bloom-filtered identifiers, reporting for both the time taken for
+     * upserting every document of the collection again and for looking up every identifier, plus as many missing ones
+     *
+     * @param analyzer     analyzer that must be used
+     * @param similarity   similarity that must be used
+     * @param ramBuffer    dimension of the RAM buffer that must be used
+     * @param indexPath    prefix of the directories where to store the index files
+     * @param docsPath     where to retrieve the collection documents
+     * @param extension    extension of the document files
+     * @param charsetName  charset to be used
+     * @param expectedDocs number of documents expected to be retrieved
+     */
+    private static void runBloomFilterComparison(Analyzer analyzer, Similarity similarity, int ramBuffer, String indexPath,
+                                                 String docsPath, String extension, String charsetName, int expectedDocs) {
+
+        final Map<String, String> report = new LinkedHashMap<>();
+
+        for (boolean bloom : new boolean[]{false, true}) {
+
+            final String suffix = bloom ? "bloom" : "nobloom";
+
+            try {
+                ToucheIndexer indexer = new ToucheIndexer(analyzer, similarity, ramBuffer, indexPath + "_" + suffix,
+                        docsPath, extension, charsetName, expectedDocs, ToucheStreamParser.class);
+                indexer.setBloomFilter(bloom);
+                indexer.index();
+
+                //forget the indexed files, so that every document is upserted by the incremental run
+                Files.deleteIfExists(Paths.get(indexPath + "_" + suffix, IndexManifest.FILE_NAME));
+                indexer.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+                long start = System.currentTimeMillis();
+                indexer.index();
+                final long upsertTime = System.currentTimeMillis() - start;
+
+                long found = 0;
+                start = System.currentTimeMillis();
+                try (ArgumentLookup lookup = new ArgumentLookup(indexPath + "_" + suffix)) {
+                    final List<String> ids = lookup.identifiers();
+                    for (String id : ids) {
+                        found += lookup.get(id) != null ? 1 : 0;
+                        found += lookup.get(id + "-missing") != null ? 1 : 0;
+                    }
+                }
+                final long lookupTime = System.currentTimeMillis() - start;
+
+                report.put(suffix, String.format("%d ms upserting, %d ms looking up (%d found), %d Kbytes", upsertTime,
+                        lookupTime, found, ToucheIndexer.indexSize(Paths.get(indexPath + "_" + suffix)) / 1024));
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        report.forEach((k, v) -> System.out.printf("Index %s: %s.%n", k, v));
+    }
+
+    /**
+     * run the indexing phase with every combination of stored fields compression and compound files, reporting for
+     * each one the build time, the index size and the average time for fetching the stored fields of a document
+     *
+     * @param analyzer     analyzer that must be used
+     * @param similarity   similarity that must be used
+     * @param ramBuffer    dimension of the RAM buffer that must be used
+     * @param indexPath    prefix of the directories where to store the index files
+     * @param docsPath     where to retrieve the collection documents
+     * @param extension    extension of the document files
+     * @param charsetName  charset to be used
+     * @param expectedDocs number of documents expected to be retrieved
+     */
+    private static void runCodecComparison(Analyzer analyzer, Similarity similarity, int ramBuffer, String indexPath,
+                                           String docsPath, String extension, String charsetName, int expectedDocs) {
+
+        final int fetches = 10000;
+        final Map<String, String> report = new LinkedHashMap<>();
+
+        for (Lucene90Codec.Mode mode : Lucene90Codec.Mode.values()) {
+            for (boolean compound : new boolean[]{true, false}) {
+
+                final String suffix = mode.name().toLowerCase() + (compound ? "_cfs" : "_nocfs");
+
+                try {
+                    ToucheIndexer indexer = new ToucheIndexer(analyzer, similarity, ramBuffer, indexPath + "_" + suffix,
+                            docsPath, extension, charsetName, expectedDocs, ToucheStreamParser.class);
+                    indexer.setStoredFieldsMode(mode);
+                    indexer.setCompoundFile(compound);
+                    long start = System.currentTimeMillis();
+                    indexer.index();
+                    final long buildTime = System.currentTimeMillis() - start;
+
+                    //the same random documents are fetched from every index
+                    long fetchTime;
+                    try (DirectoryReader reader = DirectoryReader.open(FSDirectory.open(Paths.get(indexPath + "_" + suffix)))) {
+                        final Random random = new Random(42);
+                        start = System.nanoTime();
+                        for (int i = 0; i < fetches; i++) {
+                            reader.document(random.nextInt(reader.maxDoc()));
+                        }
+                        fetchTime = System.nanoTime() - start;
+                    }
+
+                    report.put(suffix, String.format("%d ms building, %d Kbytes, %.1f us per stored document",
+                            buildTime, ToucheIndexer.indexSize(Paths.get(indexPath + "_" + suffix)) / 1024,
+                            fetchTime / 1000.0 / fetches));
+                } catch (IOException e) {
+                    System.out.println(e.getMessage());
+                    System.exit(1);
+                }
+            }
+        }
+
+        report.forEach((k, v) -> System.out.printf("Index %s: %s.%n", k, v));
+    }
+
     /**
      * run indexing and search phases with different stoplists for system tuning
      *
@@ -185,20 +398,27 @@ public class Main {
         stoplists.add("ranks.txt");
         stoplists.add("countwordsfree.txt");
 
+        Similarity similarity = new LMDirichletSimilarity(1800);
+
+        //one analyzer, and one index, for every stoplist
+        Map<String, ToucheAnalyzerTuning> analyzers = new LinkedHashMap<>();
         for (String list : stoplists) {
-            //indexing with that stoplist and try to do a search
-            try {
+            analyzers.put(list, new ToucheAnalyzerTuning(list, null));
+        }
+
+        try {
+            //parse the collection only once, indexing it with every stoplist
+            runIndexerVariants(analyzers, similarity, ramBuffer, indexPath, docsPath, extension, charsetName, expectedDocs);
+
+            for (String list : stoplists) {
+                //search with that stoplist
                 System.out.println(list);
-                ToucheAnalyzerTuning analyzer = new ToucheAnalyzerTuning(list, null);
-                Similarity similarity = new LMDirichletSimilarity(1800);
-                new ToucheIndexer(analyzer, similarity, ramBuffer, indexPath, docsPath, extension,
-                        charsetName, expectedDocs, ToucheParser.class).index();
-                new ToucheSearcher(analyzer, similarity, indexPath, topics, expectedTopics,
+                new ToucheSearcher(analyzers.get(list), similarity, indexPath + "_" + list, topics, expectedTopics,
                         runID + "_" + similarity + "_" + list, runPath, maxDocsRetrieved, queryWeights).search();
-            } catch (IOException | ParseException e) {
-                System.out.println(e.getMessage());
-                System.exit(1);
             }
+        } catch (IOException | ParseException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
         }
 
     }
@@ -225,24 +445,32 @@ public class Main {
                                                      int expectedTopics, String runID, String runPath, int maxDocsRetrieved, Map queryWeights) {
 
         //trying different stemmers
-        ArrayList<Class> stemmers = new ArrayList<>();
+        List<Class<? extends TokenFilter>> stemmers = new ArrayList<>();
         stemmers.add(EnglishMinimalStemFilter.class);
         stemmers.add(KStemFilter.class);
         stemmers.add(PorterStemFilter.class);
 
-        for (Class stemmer : stemmers) {
-            //indexing with that stemmer and try to do a search
-            try {
-                ToucheAnalyzerTuning analyzer = new ToucheAnalyzerTuning(stopList, null);
-                Similarity similarity = new LMDirichletSimilarity(1800);
-                new ToucheIndexer(analyzer, similarity, ramBuffer, indexPath, docsPath, extension,
-                        charsetName, expectedDocs, ToucheParser.class).index();
-                new ToucheSearcher(analyzer, similarity, indexPath, topics, expectedTopics,
+        Similarity similarity = new LMDirichletSimilarity(1800);
+
+        //one analyzer, and one index, for every stemmer
+        Map<String, ToucheAnalyzerTuning> analyzers = new LinkedHashMap<>();
+        for (Class<? extends TokenFilter> stemmer : stemmers) {
+            analyzers.put(stemmer.getSimpleName(), new ToucheAnalyzerTuning(stopList, stemmer));
+        }
+
+        try {
+            //parse the collection only once, indexing it with every stemmer
+            runIndexerVariants(analyzers, similarity, ramBuffer, indexPath, docsPath, extension, charsetName, expectedDocs);
+
+            for (Class<? extends TokenFilter> stemmer : stemmers) {
+                //search with that stemmer
+                new ToucheSearcher(analyzers.get(stemmer.getSimpleName()), similarity,
+                        indexPath + "_" + stemmer.getSimpleName(), topics, expectedTopics,
                         runID + "_" + similarity + "_" + stopList + "_" + stemmer.getName(), runPath, maxDocsRetrieved, queryWeights).search();
-            } catch (IOException | ParseException e) {
-                System.out.println(e.getMessage());
-                System.exit(1);
             }
+        } catch (IOException | ParseException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
         }
 
     }